@@ -1,19 +1,47 @@
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 
 public class HotelManagementSystem extends JFrame {
     // ---- Data model ----
-    private static class Booking {
+    // The core classes below are package-private rather than private so the
+    // benchmarks module (see benchmarks/) can drive them without the UI.
+    static class Booking {
+        int id = -1;             // position in the RoomStore
         String roomNumber;
         String roomType;
         double pricePerNight;
@@ -30,59 +58,4809 @@ public class HotelManagementSystem extends JFrame {
             this.checkOutDate = "";
         }
 
+        Booking copy() {
+            Booking c = new Booking(roomNumber, roomType, pricePerNight);
+            c.id = id;
+            c.guestName = guestName;
+            c.checkInDate = checkInDate;
+            c.checkOutDate = checkOutDate;
+            return c;
+        }
+
         boolean isOccupied() {
             return guestName != null && !guestName.isEmpty();
         }
 
-        String[] toRow() {
-            return new String[] {
-                roomNumber,
-                roomType,
-                String.format("%.2f", pricePerNight),
-                guestName,
-                checkInDate,
-                checkOutDate
-            };
+        String toCSV() {
+            return escapeCSV(roomNumber) + "," + escapeCSV(roomType) + "," +
+                   pricePerNight + "," + escapeCSV(guestName) + "," +
+                   escapeCSV(checkInDate) + "," + escapeCSV(checkOutDate);
+        }
+
+        static String escapeCSV(String s) {
+            if (s == null) return "";
+            if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+                s = s.replace("\"", "\"\"");
+                return "\"" + s + "\"";
+            }
+            return s;
+        }
+    }
+
+    // ---- Timestamps ----
+    // "yyyy-MM-dd HH:mm" <-> wall-clock minutes since 1970-01-01 00:00, counted as if
+    // the local time were UTC. No time zone is applied, so every text converts back to
+    // exactly itself and two stamps subtract to their wall-clock difference.
+    static class Timestamps {
+        static final long NONE = Long.MIN_VALUE;   // empty text
+        static final long INVALID = Long.MIN_VALUE + 1;
+
+        static long parse(String s) {
+            if (s == null || s.isEmpty()) return NONE;
+            if (s.length() != 16 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != ' ' || s.charAt(13) != ':')
+                return INVALID;
+            int y = digits(s, 0, 4), mo = digits(s, 5, 2), d = digits(s, 8, 2), h = digits(s, 11, 2), mi = digits(s, 14, 2);
+            if (y < 0 || mo < 1 || mo > 12 || d < 1 || d > java.time.YearMonth.of(y, mo).lengthOfMonth() || h < 0 || h > 23 || mi < 0 || mi > 59)
+                return INVALID;
+            return java.time.LocalDate.of(y, mo, d).toEpochDay() * 1440 + h * 60 + mi;
+        }
+
+        static String format(long minutes) {
+            if (minutes == NONE || minutes == INVALID) return "";
+            java.time.LocalDate date = java.time.LocalDate.ofEpochDay(Math.floorDiv(minutes, 1440));
+            int m = Math.floorMod(minutes, 1440);
+            char[] c = new char[16];
+            put(c, 0, date.getYear(), 4); c[4] = '-';
+            put(c, 5, date.getMonthValue(), 2); c[7] = '-';
+            put(c, 8, date.getDayOfMonth(), 2); c[10] = ' ';
+            put(c, 11, m / 60, 2); c[13] = ':';
+            put(c, 14, m % 60, 2);
+            return new String(c);
+        }
+
+        /** The current local wall-clock time in the same units. */
+        static long now() {
+            java.time.LocalDateTime t = java.time.LocalDateTime.now();
+            return t.toLocalDate().toEpochDay() * 1440 + t.getHour() * 60 + t.getMinute();
+        }
+
+        private static int digits(String s, int from, int n) {
+            int v = 0;
+            for (int i = from; i < from + n; i++) {
+                char ch = s.charAt(i);
+                if (ch < '0' || ch > '9') return -1;
+                v = v * 10 + (ch - '0');
+            }
+            return v;
+        }
+
+        private static void put(char[] c, int at, int v, int n) {
+            for (int i = at + n - 1; i >= at; i--) { c[i] = (char) ('0' + v % 10); v /= 10; }
+        }
+    }
+
+    // ---- Search index ----
+    // Trigram posting lists over lower-cased room numbers and guest names.
+    // A query picks its rarest trigram and only verifies the rooms in that list;
+    // queries shorter than a trigram fall back to a scan of the cached text.
+    // Synchronized so search-as-you-type can query it off the EDT.
+    static class SearchIndex {
+        private static final int N = 3;
+        private final List<String> roomText = new ArrayList<>();
+        private final List<String> guestText = new ArrayList<>();
+        private final Map<String, Set<Integer>> roomGrams = new HashMap<>();
+        private final Map<String, Set<Integer>> guestGrams = new HashMap<>();
+
+        synchronized void add(int id, String roomNumber, String guestName) {
+            String room = RoomStore.key(roomNumber);
+            String guest = RoomStore.key(guestName);
+            roomText.add(room);
+            guestText.add(guest);
+            post(roomGrams, room, id);
+            post(guestGrams, guest, id);
+        }
+
+        synchronized void updateGuest(int id, String guestName) {
+            String old = guestText.get(id);
+            String guest = RoomStore.key(guestName);
+            if (old.equals(guest)) return;
+            unpost(guestGrams, old, id);
+            guestText.set(id, guest);
+            post(guestGrams, guest, id);
+        }
+
+        synchronized void clear() {
+            roomText.clear();
+            guestText.clear();
+            roomGrams.clear();
+            guestGrams.clear();
+        }
+
+        /** Ids of rooms whose number or guest contains q (already lower-cased), ascending. */
+        synchronized int[] query(String q) {
+            int[] hits = new int[16];
+            int n = 0;
+            if (q.length() < N) {
+                for (int id = 0; id < roomText.size(); id++) {
+                    if (roomText.get(id).contains(q) || guestText.get(id).contains(q)) {
+                        if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+                        hits[n++] = id;
+                    }
+                }
+                return Arrays.copyOf(hits, n);
+            }
+            Set<Integer> rooms = rarest(roomGrams, q);
+            Set<Integer> guests = rarest(guestGrams, q);
+            for (Integer id : rooms) {
+                if (roomText.get(id).contains(q)) {
+                    if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+                    hits[n++] = id;
+                }
+            }
+            for (Integer id : guests) {
+                // rooms whose number matched were already taken from the other list
+                if (guestText.get(id).contains(q) && !roomText.get(id).contains(q)) {
+                    if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+                    hits[n++] = id;
+                }
+            }
+            hits = Arrays.copyOf(hits, n);
+            Arrays.sort(hits);
+            return hits;
+        }
+
+        private static Set<Integer> rarest(Map<String, Set<Integer>> grams, String q) {
+            Set<Integer> best = null;
+            for (int i = 0; i + N <= q.length(); i++) {
+                Set<Integer> p = grams.get(q.substring(i, i + N));
+                if (p == null) return Collections.emptySet();
+                if (best == null || p.size() < best.size()) best = p;
+            }
+            return best;
+        }
+
+        private static void post(Map<String, Set<Integer>> grams, String text, int id) {
+            for (int i = 0; i + N <= text.length(); i++)
+                grams.computeIfAbsent(text.substring(i, i + N), k -> new HashSet<>()).add(id);
+        }
+
+        private static void unpost(Map<String, Set<Integer>> grams, String text, int id) {
+            for (int i = 0; i + N <= text.length(); i++) {
+                String g = text.substring(i, i + N);
+                Set<Integer> p = grams.get(g);
+                if (p == null) continue;
+                p.remove(id);
+                if (p.isEmpty()) grams.remove(g);
+            }
+        }
+    }
+
+    // ---- Room store ----
+    // Rooms in insertion order plus case-folded hash indexes, so lookups by room
+    // number, type or occupancy never have to walk the whole list.
+    // All state changes to a Booking must go through here to keep the indexes right.
+    //
+    // Safe to share between threads: adds and clear are serialized, each room's state
+    // is guarded by one of STRIPES locks picked by room number, and readers iterate a
+    // published array and copy rooms with optimistic reads, so they never block writers.
+    static class RoomStore implements Iterable<Booking> {
+        private static final int STRIPES = 64;
+        private static final Comparator<Booking> BY_ID = Comparator.comparingInt(b -> b.id);
+
+        /** The rooms published so far; an add publishes a new view over the same array when it fits. */
+        private static class Rooms {
+            final Booking[] a;
+            final int n;
+
+            Rooms(Booking[] a, int n) {
+                this.a = a;
+                this.n = n;
+            }
+        }
+
+        private volatile Rooms rooms = new Rooms(new Booking[16], 0);
+        private final Map<String, Booking> byRoom = new ConcurrentHashMap<>();
+        private final Map<String, Set<Booking>> byType = new ConcurrentHashMap<>();
+        private final Set<Booking> occupied = new ConcurrentSkipListSet<>(BY_ID);
+        private final Set<Booking> vacant = new ConcurrentSkipListSet<>(BY_ID);
+        private final SearchIndex text = new SearchIndex();
+        private final DeskCounters counters = new DeskCounters();
+        private final StampedLock[] stripes = new StampedLock[STRIPES];
+
+        RoomStore() {
+            for (int i = 0; i < STRIPES; i++) stripes[i] = new StampedLock();
+        }
+
+        static String key(String s) {
+            return s == null ? "" : s.toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * The lock guarding every room with this number. Code that changes a shared room
+         * holds it for writing around the whole check-then-act, and not across other rooms.
+         */
+        StampedLock lockFor(String roomNumber) {
+            int h = key(roomNumber).hashCode();
+            return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        }
+
+        synchronized void add(Booking b) {
+            Rooms r = rooms;
+            Booking[] a = r.n < r.a.length ? r.a : Arrays.copyOf(r.a, r.a.length * 2);
+            b.id = r.n;
+            a[r.n] = b;
+            text.add(b.id, b.roomNumber, b.guestName);
+            byRoom.putIfAbsent(key(b.roomNumber), b); // first one wins, like the old linear scan
+            byType.computeIfAbsent(key(b.roomType), k -> new ConcurrentSkipListSet<>(BY_ID)).add(b);
+            (b.isOccupied() ? occupied : vacant).add(b);
+            counters.added(b);
+            rooms = new Rooms(a, r.n + 1);
+        }
+
+        /** Adds the room unless one with the same number exists; atomic with other adds. */
+        synchronized boolean addIfAbsent(Booking b) {
+            if (find(b.roomNumber) != null) return false;
+            add(b);
+            return true;
+        }
+
+        Booking find(String roomNumber) {
+            return byRoom.get(key(roomNumber));
+        }
+
+        void checkIn(Booking b, String guest, String when) {
+            if (!b.isOccupied()) counters.checkedIn(b.roomType);
+            b.guestName = guest;
+            b.checkInDate = when;
+            b.checkOutDate = "";
+            vacant.remove(b);
+            occupied.add(b);
+            text.updateGuest(b.id, guest);
+        }
+
+        void checkOut(Booking b, String when) {
+            if (b.isOccupied()) counters.checkedOut(b.roomType);
+            b.checkOutDate = when;
+            b.guestName = "";
+            b.checkInDate = "";
+            occupied.remove(b);
+            vacant.add(b);
+            text.updateGuest(b.id, "");
+        }
+
+        /** Drops every room. Meant for reloads, not while other threads are changing rooms. */
+        synchronized void clear() {
+            rooms = new Rooms(new Booking[16], 0);
+            byRoom.clear();
+            byType.clear();
+            occupied.clear();
+            vacant.clear();
+            text.clear();
+            counters.clear();
+        }
+
+        /** Safe to call from any thread; returns room ids in store order. */
+        int[] search(String q) {
+            return text.query(key(q));
+        }
+
+        /** A detached copy of the room as of some instant, never half-way through a change. */
+        Booking copyOf(Booking b) {
+            StampedLock lock = lockFor(b.roomNumber);
+            long stamp = lock.tryOptimisticRead();
+            Booking copy = b.copy();
+            if (lock.validate(stamp)) return copy;
+            stamp = lock.readLock();
+            try { return b.copy(); }
+            finally { lock.unlockRead(stamp); }
+        }
+
+        /**
+         * Runs the action holding every room's lock for reading, so it sees no change half
+         * done and none can start until it returns. Writers wait meanwhile; keep it short.
+         */
+        <T> T frozen(java.util.function.Supplier<T> action) {
+            long[] stamps = new long[STRIPES];
+            int held = 0;
+            try {
+                for (; held < STRIPES; held++) stamps[held] = stripes[held].readLock(); // always in index order
+                return action.get();
+            } finally {
+                while (held-- > 0) stripes[held].unlockRead(stamps[held]);
+            }
+        }
+
+        /** Detached copies of every room, safe to hand to another thread. */
+        List<Booking> snapshot() {
+            return snapshot(0, Integer.MAX_VALUE);
+        }
+
+        /** Detached copies of the rooms with ids [from, to), clipped to the store. */
+        List<Booking> snapshot(int from, int to) {
+            Rooms r = rooms;
+            int end = Math.min(to, r.n);
+            List<Booking> copy = new ArrayList<>(Math.max(0, end - from));
+            for (int i = from; i < end; i++) copy.add(copyOf(r.a[i]));
+            return copy;
+        }
+
+        int size() { return rooms.n; }
+        boolean isEmpty() { return rooms.n == 0; }
+
+        Booking get(int i) {
+            Rooms r = rooms;
+            if (i < 0 || i >= r.n) throw new IndexOutOfBoundsException("Room " + i + " of " + r.n);
+            return r.a[i];
+        }
+
+        Collection<Booking> ofType(String roomType) {
+            Set<Booking> s = byType.get(key(roomType));
+            return s == null ? Collections.emptySet() : Collections.unmodifiableSet(s);
+        }
+
+        DeskCounters counters() { return counters; }
+
+        Collection<Booking> occupied() { return Collections.unmodifiableSet(occupied); }
+        Collection<Booking> vacant() { return Collections.unmodifiableSet(vacant); }
+
+        /** Iterates the rooms present when it was created; later adds are not seen. */
+        public Iterator<Booking> iterator() {
+            Rooms r = rooms;
+            return Collections.unmodifiableList(Arrays.asList(r.a).subList(0, r.n)).iterator();
+        }
+    }
+
+    // ---- Dashboard counters ----
+    // Rooms and occupied rooms per type, and the revenue of today's checkouts. RoomStore
+    // and the checkout path update them in O(1) per change, so the dashboard never scans
+    // the store. Reads take no lock; a reading taken mid-change may be a room off for an
+    // instant, which the next refresh corrects.
+    static class DeskCounters {
+        private static class TypeCount {
+            final String roomType;
+            final LongAdder rooms = new LongAdder(), occupied = new LongAdder();
+
+            TypeCount(String roomType) {
+                this.roomType = roomType;
+            }
+        }
+
+        private final Map<String, TypeCount> byType = new ConcurrentHashMap<>();
+        private long revenueDay = Long.MIN_VALUE;
+        private BigDecimal revenue = BigDecimal.ZERO;
+
+        private TypeCount type(String roomType) {
+            return byType.computeIfAbsent(RoomStore.key(roomType), k -> new TypeCount(roomType));
+        }
+
+        void added(Booking b) {
+            TypeCount t = type(b.roomType);
+            t.rooms.increment();
+            if (b.isOccupied()) t.occupied.increment();
+        }
+
+        void checkedIn(String roomType) { type(roomType).occupied.increment(); }
+        void checkedOut(String roomType) { type(roomType).occupied.decrement(); }
+
+        /** Drops the room counts; today's revenue survives a reload. */
+        void clear() { byType.clear(); }
+
+        /** Adds a checkout's total to the day it happened; an earlier day than the current one is ignored. */
+        synchronized void revenue(long checkOutMinutes, BigDecimal total) {
+            long day = Math.floorDiv(checkOutMinutes, 1440);
+            if (day > revenueDay) {
+                revenueDay = day;
+                revenue = BigDecimal.ZERO;
+            }
+            if (day == revenueDay) revenue = revenue.add(total);
+        }
+
+        /** Replaces the day's revenue, e.g. with the total already in history at startup. */
+        synchronized void revenueSoFar(long minute, BigDecimal total) {
+            revenueDay = Math.floorDiv(minute, 1440);
+            revenue = total;
+        }
+
+        synchronized BigDecimal revenueOn(long minute) {
+            return Math.floorDiv(minute, 1440) == revenueDay ? revenue : BigDecimal.ZERO;
+        }
+
+        /** {rooms, occupied} per room type, ordered by type. */
+        Map<String, long[]> byType() {
+            Map<String, long[]> out = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (TypeCount t : byType.values()) {
+                long rooms = t.rooms.sum(), occupied = Math.min(t.occupied.sum(), rooms);
+                if (rooms > 0) out.put(t.roomType, new long[] { rooms, Math.max(occupied, 0) });
+            }
+            return out;
+        }
+    }
+
+    // ---- Columnar store ----
+    // Optional compact layout for very large properties: one array per field instead
+    // of one Booking object per room. Timestamps are wall-clock minutes (see Timestamps),
+    // prices are cents, and room types and guest names are dictionary codes. Texts that
+    // are not valid timestamps and prices that are not whole cents are kept aside, so
+    // nothing is lost. Not thread-safe.
+    private static class ColumnarBookingStore {
+        private static final int VACANT = -1;
+
+        /** Interns repeated strings as small int codes. Codes are never reused. */
+        private static class Dictionary {
+            final List<String> values = new ArrayList<>();
+            final Map<String, Integer> codes = new HashMap<>();
+
+            int code(String s) {
+                Integer c = codes.get(s);
+                if (c == null) {
+                    c = values.size();
+                    values.add(s);
+                    codes.put(s, c);
+                }
+                return c;
+            }
+
+            String value(int code) { return values.get(code); }
+            int size() { return values.size(); }
+        }
+
+        private String[] room = new String[16];
+        private int[] type = new int[16];
+        private int[] guest = new int[16];
+        private long[] priceCents = new long[16];
+        private long[] checkIn = new long[16];
+        private long[] checkOut = new long[16];
+        private int size;
+        private final Dictionary types = new Dictionary();
+        private final Dictionary guests = new Dictionary();
+        private final Map<String, Integer> byRoom = new HashMap<>();
+        private final Map<Long, String> oddTimes = new HashMap<>(); // row * 2 (+1 for check-out)
+        private final Map<Integer, Double> oddPrices = new HashMap<>(); // rows whose price is not whole cents
+
+        static ColumnarBookingStore of(Iterable<Booking> rooms) {
+            ColumnarBookingStore c = new ColumnarBookingStore();
+            for (Booking b : rooms) {
+                int row = c.append(b.roomNumber, b.roomType, b.pricePerNight);
+                if (b.isOccupied()) c.guest[row] = c.guests.code(b.guestName);
+                c.setTime(row, false, b.checkInDate);
+                c.setTime(row, true, b.checkOutDate);
+            }
+            return c;
+        }
+
+        /** The rows back as Bookings; equal to the ones the store was built from. */
+        List<Booking> toBookings() {
+            List<Booking> out = new ArrayList<>(size);
+            for (int r = 0; r < size; r++) out.add(toBooking(r));
+            return out;
+        }
+
+        /** A detached Booking with the row's current state. */
+        Booking toBooking(int r) {
+            Double odd = oddPrices.get(r);
+            Booking b = new Booking(room[r], types.value(type[r]), odd != null ? odd : priceCents[r] / 100.0);
+            b.guestName = guestName(r);
+            b.checkInDate = checkInText(r);
+            b.checkOutDate = checkOutText(r);
+            return b;
+        }
+
+        /** Adds a vacant room and returns its row, or -1 if the number is taken. */
+        int addRoom(String roomNumber, String roomType, double price) {
+            if (find(roomNumber) >= 0) return -1;
+            return append(roomNumber, roomType, price);
+        }
+
+        private int append(String roomNumber, String roomType, double price) {
+            long cents = Math.round(price * 100);
+            if (size == room.length) grow();
+            int r = size++;
+            room[r] = roomNumber;
+            type[r] = types.code(roomType);
+            guest[r] = VACANT;
+            priceCents[r] = cents;
+            checkIn[r] = Timestamps.NONE;
+            checkOut[r] = Timestamps.NONE;
+            byRoom.putIfAbsent(RoomStore.key(roomNumber), r);
+            if (cents / 100.0 != price) oddPrices.put(r, price);
+            return r;
+        }
+
+        private void grow() {
+            int n = room.length * 2;
+            room = Arrays.copyOf(room, n);
+            type = Arrays.copyOf(type, n);
+            guest = Arrays.copyOf(guest, n);
+            priceCents = Arrays.copyOf(priceCents, n);
+            checkIn = Arrays.copyOf(checkIn, n);
+            checkOut = Arrays.copyOf(checkOut, n);
+        }
+
+        int find(String roomNumber) {
+            Integer r = byRoom.get(RoomStore.key(roomNumber));
+            return r == null ? -1 : r;
+        }
+
+        boolean isOccupied(int r) { return guest[r] != VACANT; }
+
+        void checkIn(int r, String guestName, long minutes) {
+            guest[r] = guests.code(guestName);
+            checkIn[r] = minutes;
+            checkOut[r] = Timestamps.NONE;
+            oddTimes.remove(r * 2L);
+            oddTimes.remove(r * 2L + 1);
+        }
+
+        void checkOut(int r, long minutes) {
+            guest[r] = VACANT;
+            checkIn[r] = Timestamps.NONE;
+            checkOut[r] = minutes;
+            oddTimes.remove(r * 2L);
+            oddTimes.remove(r * 2L + 1);
+        }
+
+        /** Rows whose room number or guest contains q, compared case-insensitively. */
+        int[] search(String q) {
+            String k = RoomStore.key(q);
+            // decide each guest name once, then the scan is an int lookup per row
+            boolean[] guestHit = new boolean[guests.size()];
+            for (int g = 0; g < guestHit.length; g++) guestHit[g] = RoomStore.key(guests.value(g)).contains(k);
+            int[] hits = new int[16];
+            int n = 0;
+            for (int r = 0; r < size; r++) {
+                if ((guest[r] != VACANT && guestHit[guest[r]]) || RoomStore.key(room[r]).contains(k)) {
+                    if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+                    hits[n++] = r;
+                }
+            }
+            return Arrays.copyOf(hits, n);
+        }
+
+        int size() { return size; }
+        String roomNumber(int r) { return room[r]; }
+        String roomType(int r) { return types.value(type[r]); }
+        long priceCents(int r) { return priceCents[r]; }
+        String guestName(int r) { return guest[r] == VACANT ? "" : guests.value(guest[r]); }
+        long checkInMinutes(int r) { return checkIn[r]; }
+        String checkInText(int r) { return timeText(r, false); }
+        String checkOutText(int r) { return timeText(r, true); }
+
+        private void setTime(int r, boolean out, String text) {
+            long m = Timestamps.parse(text);
+            if (m == Timestamps.INVALID) oddTimes.put(r * 2L + (out ? 1 : 0), text);
+            (out ? checkOut : checkIn)[r] = m;
+        }
+
+        private String timeText(int r, boolean out) {
+            long m = (out ? checkOut : checkIn)[r];
+            return m == Timestamps.INVALID ? oddTimes.get(r * 2L + (out ? 1 : 0)) : Timestamps.format(m);
+        }
+
+        // -- footprint estimate, assuming a 64-bit JVM with compressed oops --
+
+        private static long align(long n) { return (n + 7) & ~7L; }
+        private static long array(int len, int elem) { return align(16 + (long) len * elem); }
+        private static long string(String s) { return 24 + array(s.length(), s.chars().allMatch(ch -> ch < 256) ? 1 : 2); }
+        private static long hashMap(int entries) { return 48 + array(Integer.highestOneBit(Math.max(1, entries * 4 / 3)) * 2, 4) + entries * 32L; }
+        private static long boxedInts(int count) { return Math.max(0, count - 128) * 16L; } // Integer.valueOf caches -128..127
+
+        private static long strings(Iterable<String> all, Set<String> seen) {
+            long bytes = 0;
+            for (String s : all) if (s != null && seen.add(s)) bytes += string(s);
+            return bytes;
+        }
+
+        static String footprintReport(List<Booking> rooms) {
+            Set<String> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            long objects = array(rooms.size(), 4) + 24;                      // ArrayList + its array
+            objects += rooms.size() * align(12 + 4 + 5 * 4 + 8);            // Booking headers and fields
+            List<String> texts = new ArrayList<>();
+            for (Booking b : rooms) {
+                texts.add(b.roomNumber); texts.add(b.roomType); texts.add(b.guestName);
+                texts.add(b.checkInDate); texts.add(b.checkOutDate);
+            }
+            long objectStrings = strings(texts, seen);
+
+            // every field of the built store, nothing it does not hold
+            ColumnarBookingStore c = of(rooms);
+            int cap = c.room.length;
+            long columns = array(cap, 4) + 3 * array(cap, 8) + 2 * array(cap, 4);
+            long dicts = 0;
+            for (Dictionary d : Arrays.asList(c.types, c.guests))   // values list, codes map and its boxed codes
+                dicts += strings(d.values, new HashSet<>()) + 24 + array(d.size(), 4) + hashMap(d.size()) + boxedInts(d.size());
+            long roomStrings = strings(Arrays.asList(c.room).subList(0, c.size), Collections.newSetFromMap(new IdentityHashMap<>()));
+            long index = hashMap(c.size) + boxedInts(c.size);                // byRoom, keyed by the case-folded number
+            for (int r = 0; r < c.size; r++) {
+                String k = RoomStore.key(c.room[r]);
+                if (k != c.room[r]) index += string(k);                     // toLowerCase copies only when it changes something
+            }
+            long odd = hashMap(c.oddTimes.size()) + c.oddTimes.size() * 16L + strings(c.oddTimes.values(), new HashSet<>())
+                    + hashMap(c.oddPrices.size()) + c.oddPrices.size() * 32L; // boxed keys and prices
+            long columnar = columns + dicts + roomStrings + index + odd;
+
+            long list = objects + objectStrings;
+            return String.format("Rooms: %d (%d room types, %d distinct guests)%n"
+                    + "List<Booking>:          %,d bytes (objects %,d, strings %,d)%n"
+                    + "ColumnarBookingStore:   %,d bytes (columns %,d, dictionaries %,d, room numbers %,d, room index %,d, odd values %,d)%n"
+                    + "Columnar / list:        %.1f%%%n",
+                    rooms.size(), c.types.size(), c.guests.size(),
+                    list, objects, objectStrings,
+                    columnar, columns, dicts, roomStrings, index, odd,
+                    100.0 * columnar / Math.max(1, list));
+        }
+    }
+
+    // ---- Reservations ----
+    // Future stays, kept per room in a TreeMap keyed by start. A room's stays never
+    // overlap, so the only one that can overlap [from, to) is the last one starting
+    // before `to`: availability is one O(log n) lookup per room. Times are wall-clock
+    // minutes (see Timestamps); a stay runs from 00:00 on arrival to 00:00 on departure.
+    private static class Reservation {
+        final String roomNumber, guestName;
+        final long from, to;
+
+        Reservation(String roomNumber, String guestName, long from, long to) {
+            this.roomNumber = roomNumber;
+            this.guestName = guestName;
+            this.from = from;
+            this.to = to;
+        }
+
+        String dates() {
+            return Timestamps.format(from).substring(0, 10) + " to " + Timestamps.format(to).substring(0, 10);
+        }
+
+        String toCSV() {
+            return Booking.escapeCSV(roomNumber) + "," + Booking.escapeCSV(guestName) + ","
+                    + Timestamps.format(from) + "," + Timestamps.format(to);
+        }
+    }
+
+    private static class ReservationCalendar {
+        static final String HEADER = "roomNumber,guestName,from,to";
+
+        private final Map<String, TreeMap<Long, Reservation>> byRoom = new HashMap<>();
+        private int count;
+
+        /** Adds a stay; fails if it is empty or overlaps another stay in the same room. */
+        synchronized Reservation reserve(String roomNumber, String guestName, long from, long to) {
+            if (from >= to) throw new IllegalArgumentException("Departure must be after arrival.");
+            Reservation clash = firstOverlap(roomNumber, from, to);
+            if (clash != null)
+                throw new IllegalStateException("Room " + roomNumber + " is reserved for " + clash.guestName + " " + clash.dates());
+            Reservation r = new Reservation(roomNumber, guestName, from, to);
+            byRoom.computeIfAbsent(RoomStore.key(roomNumber), k -> new TreeMap<>()).put(from, r);
+            count++;
+            return r;
+        }
+
+        synchronized boolean cancel(Reservation r) {
+            TreeMap<Long, Reservation> t = byRoom.get(RoomStore.key(r.roomNumber));
+            if (t == null || !t.remove(r.from, r)) return false;
+            if (t.isEmpty()) byRoom.remove(RoomStore.key(r.roomNumber));
+            count--;
+            return true;
+        }
+
+        /**
+         * A walk-in holds the room for tonight, so a stay overlapping tonight must be this
+         * guest's: throws RESERVED otherwise, else cancels it and returns whether there was one.
+         */
+        synchronized boolean arrive(String roomNumber, String guest, long now) {
+            long tomorrow = (Math.floorDiv(now, 1440) + 1) * 1440;
+            List<Reservation> tonight = overlaps(roomNumber, now, tomorrow);
+            for (Reservation r : tonight) {
+                if (!r.guestName.equalsIgnoreCase(guest))
+                    throw new BookingException(BookingException.Kind.RESERVED, "Room is reserved for " + r.guestName + " " + r.dates());
+            }
+            for (Reservation r : tonight) cancel(r); // the guest has arrived
+            return !tonight.isEmpty();
+        }
+
+        synchronized Reservation firstOverlap(String roomNumber, long from, long to) {
+            List<Reservation> all = overlaps(roomNumber, from, to);
+            return all.isEmpty() ? null : all.get(0);
+        }
+
+        /** Stays in the room that overlap [from, to), earliest first. */
+        synchronized List<Reservation> overlaps(String roomNumber, long from, long to) {
+            TreeMap<Long, Reservation> t = byRoom.get(RoomStore.key(roomNumber));
+            if (t == null || from >= to) return Collections.emptyList();
+            Long start = t.floorKey(from);
+            List<Reservation> out = new ArrayList<>();
+            for (Reservation r : t.subMap(start == null ? from : start, true, to, false).values())
+                if (r.to > from) out.add(r);
+            return out;
+        }
+
+        synchronized boolean isFree(String roomNumber, long from, long to) {
+            TreeMap<Long, Reservation> t = byRoom.get(RoomStore.key(roomNumber));
+            if (t == null) return true;
+            Map.Entry<Long, Reservation> e = t.lowerEntry(to);
+            return e == null || e.getValue().to <= from;
+        }
+
+        /**
+         * Rooms of the type with no stay overlapping [from, to). A room occupied right now
+         * has no known departure, so it only counts as free for ranges starting tomorrow or later.
+         */
+        synchronized List<Booking> freeRooms(RoomStore store, String roomType, long from, long to) {
+            long tomorrow = (Math.floorDiv(Timestamps.now(), 1440) + 1) * 1440;
+            List<Booking> free = new ArrayList<>();
+            for (Booking b : store.ofType(roomType))
+                if ((!b.isOccupied() || from >= tomorrow) && isFree(b.roomNumber, from, to)) free.add(b);
+            return free;
+        }
+
+        /** Free room numbers for every room type at once, keyed by type as first seen. */
+        synchronized Map<String, List<String>> freeRoomsByType(RoomStore store, long from, long to) {
+            Map<String, List<String>> out = new LinkedHashMap<>();
+            Set<String> types = new LinkedHashSet<>();
+            for (Booking b : store) types.add(RoomStore.key(b.roomType));
+            for (String type : types) {
+                List<String> rooms = new ArrayList<>();
+                for (Booking b : freeRooms(store, type, from, to)) rooms.add(b.roomNumber);
+                out.put(type, rooms);
+            }
+            return out;
+        }
+
+        synchronized int size() { return count; }
+
+        synchronized void clear() {
+            byRoom.clear();
+            count = 0;
+        }
+
+        synchronized List<String> toLines() {
+            List<String> lines = new ArrayList<>(count + 1);
+            lines.add(HEADER);
+            for (TreeMap<Long, Reservation> t : byRoom.values())
+                for (Reservation r : t.values()) lines.add(r.toCSV());
+            return lines;
+        }
+
+        static List<Reservation> read(Path file) throws IOException {
+            List<Reservation> out = new ArrayList<>();
+            if (!Files.exists(file)) return out;
+            try (BufferedReader r = Files.newBufferedReader(file)) {
+                r.readLine(); // skip header
+                String line;
+                while ((line = r.readLine()) != null) {
+                    String[] f = parseCSVLine(line);
+                    if (f.length < 4) continue;
+                    long from = Timestamps.parse(f[2]), to = Timestamps.parse(f[3]);
+                    if (from == Timestamps.NONE || from == Timestamps.INVALID || to == Timestamps.NONE || to == Timestamps.INVALID) continue;
+                    out.add(new Reservation(f[0], f[1], from, to));
+                }
+            }
+            return out;
+        }
+    }
+
+    // ---- Billing ----
+    // Headless version of the checkout bill. Money is BigDecimal throughout: the price
+    // is taken as the decimal it was typed as and only multiplications and exact
+    // divisions by 100 are used, so nothing is rounded until the bill is printed.
+    static class RatePolicy {
+        static final RatePolicy DEFAULT = new RatePolicy(percent("hms.taxPercent", "5"), percent("hms.discountPercent", "0"));
+
+        final BigDecimal taxPercent, discountPercent;
+
+        RatePolicy(BigDecimal taxPercent, BigDecimal discountPercent) {
+            this.taxPercent = taxPercent;
+            this.discountPercent = discountPercent;
+        }
+
+        /** Reads the percentages as typed; anything unparseable counts as 0, like the old parseDoubleSafe. */
+        static RatePolicy parse(String tax, String discount) {
+            return new RatePolicy(decimal(tax), decimal(discount));
+        }
+
+        private static BigDecimal decimal(String s) {
+            try { return new BigDecimal(s.trim()); }
+            catch (NumberFormatException | NullPointerException ex) { return BigDecimal.ZERO; }
+        }
+
+        /** A percentage from a system property; one that does not parse is reported and the fallback used. */
+        static BigDecimal percent(String property, String fallback) {
+            String value = System.getProperty(property, fallback);
+            try { return new BigDecimal(value.trim()); }
+            catch (NumberFormatException ex) {
+                System.err.println("Ignoring -D" + property + "=" + value + ": not a number, using " + fallback);
+                return new BigDecimal(fallback);
+            }
+        }
+
+        /** Same percentages, whatever their scale: 5 and 5.00 are one policy. */
+        public boolean equals(Object o) {
+            if (!(o instanceof RatePolicy)) return false;
+            RatePolicy p = (RatePolicy) o;
+            return taxPercent.compareTo(p.taxPercent) == 0 && discountPercent.compareTo(p.discountPercent) == 0;
+        }
+
+        public int hashCode() {
+            return 31 * taxPercent.stripTrailingZeros().hashCode() + discountPercent.stripTrailingZeros().hashCode();
+        }
+    }
+
+    static class Folio {
+        static final String HEADER = "roomNumber,roomType,guestName,checkIn,checkOut,nights,pricePerNight,"
+                + "subtotal,discountPercent,discount,taxable,taxPercent,tax,total";
+
+        final String roomNumber, roomType, guestName, checkIn, checkOut;
+        final long checkOutMinutes;
+        final int nights;
+        final BigDecimal pricePerNight, subtotal, discount, taxable, tax, total;
+        final RatePolicy policy;
+
+        final PricingEngine.Quote quote;
+
+        Folio(Booking b, long checkOutMinutes, PricingEngine.Quote quote) {
+            this.roomNumber = b.roomNumber;
+            this.roomType = b.roomType;
+            this.guestName = b.guestName;
+            this.checkIn = b.checkInDate;
+            this.checkOutMinutes = checkOutMinutes;
+            this.checkOut = Timestamps.format(checkOutMinutes);
+            this.nights = quote.nights;
+            this.pricePerNight = BigDecimal.valueOf(b.pricePerNight);
+            this.quote = quote;
+            this.policy = quote.policy;
+            this.subtotal = quote.subtotal;
+            this.discount = quote.discount;
+            this.taxable = quote.taxable;
+            this.tax = quote.tax;
+            this.total = quote.total;
+        }
+
+        static String money(BigDecimal v) {
+            return v.setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
+
+        String billText() {
+            StringBuilder bill = new StringBuilder();
+            bill.append("Bill for room ").append(roomNumber).append("\n");
+            bill.append("-------------------------------\n");
+            bill.append("Guest: ").append(guestName).append("\n");
+            bill.append("Room type: ").append(roomType).append("\n");
+            bill.append("Price per night: ").append(money(pricePerNight)).append("\n");
+            bill.append("Check-in: ").append(checkIn).append("\n");
+            bill.append("Check-out: ").append(checkOut).append("\n");
+            bill.append("Nights charged: ").append(nights).append("\n");
+            bill.append("\n");
+            Map<BigDecimal, Integer> rates = quote.nightsByRate();
+            if (rates.isEmpty()) {
+                bill.append("Subtotal: ").append(money(subtotal)).append("\n");
+            } else if (rates.size() == 1 && rates.containsKey(pricePerNight)) {
+                bill.append("Subtotal (n×price): ").append(money(subtotal)).append("\n");
+            } else {
+                rates.forEach((rate, n) -> bill.append("  ").append(n).append(" night").append(n == 1 ? "" : "s")
+                        .append(" at ").append(money(rate)).append("\n"));
+                bill.append("Subtotal (rate table): ").append(money(subtotal)).append("\n");
+            }
+            bill.append("Discount (").append(money(policy.discountPercent)).append("%): -").append(money(discount)).append("\n");
+            bill.append("Taxable amount: ").append(money(taxable)).append("\n");
+            bill.append("Tax (").append(money(policy.taxPercent)).append("%): +").append(money(tax)).append("\n");
+            bill.append("-------------------------------\n");
+            bill.append("Total payable: ").append(money(total)).append("\n");
+            return bill.toString();
+        }
+
+        /** Exact amounts, no rounding, trailing zeros dropped. */
+        static String plain(BigDecimal v) {
+            return v.signum() == 0 ? "0" : v.stripTrailingZeros().toPlainString();
+        }
+
+        String toCSV() {
+            return Booking.escapeCSV(roomNumber) + "," + Booking.escapeCSV(roomType) + "," + Booking.escapeCSV(guestName) + ","
+                    + Booking.escapeCSV(checkIn) + "," + checkOut + "," + nights + "," + plain(pricePerNight) + ","
+                    + plain(subtotal) + "," + plain(policy.discountPercent) + "," + plain(discount) + ","
+                    + plain(taxable) + "," + plain(policy.taxPercent) + "," + plain(tax) + "," + plain(total);
+        }
+    }
+
+    static class BillingEngine {
+        /** The bill at the room's own price, as if there were no rate table. */
+        static Folio bill(Booking b, long checkOutMinutes, RatePolicy policy) {
+            return bill(b, checkOutMinutes, policy, PricingEngine.FLAT);
+        }
+
+        /**
+         * The bill for an occupied room if it checked out at the given wall-clock minute.
+         * Night i starts i days after check-in and is charged the rate for that date.
+         */
+        static Folio bill(Booking b, long checkOutMinutes, RatePolicy policy, PricingEngine pricing) {
+            long in = Timestamps.parse(b.checkInDate);
+            if (in == Timestamps.NONE || in == Timestamps.INVALID) in = checkOutMinutes - 1440; // unknown: charge one night
+            int nights = (int) Math.max(1, -Math.floorDiv(-(checkOutMinutes - in), 1440L)); // ceil, at least one
+            return new Folio(b, checkOutMinutes, pricing.quote(b.roomType, b.pricePerNight, Math.floorDiv(in, 1440), nights, policy));
+        }
+
+        /**
+         * End-of-day run: provisional folios for every room in the snapshot that is occupied,
+         * computed in parallel and streamed to out in room order. Returns the number written.
+         */
+        static long nightAudit(List<Booking> snapshot, long at, RatePolicy policy, PricingEngine pricing, Path out) throws IOException {
+            long[] written = {0};
+            PersistenceService.replace(out, w -> {
+                w.write(Folio.HEADER); w.write("\n");
+                try {
+                    snapshot.parallelStream()
+                            .filter(Booking::isOccupied)
+                            .map(b -> bill(b, at, policy, pricing))
+                            .forEachOrdered(f -> {
+                                try { w.write(f.toCSV()); w.write("\n"); written[0]++; }
+                                catch (IOException ex) { throw new UncheckedIOException(ex); }
+                            });
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            });
+            return written[0];
+        }
+    }
+
+    // ---- Pricing ----
+    // Nightly rates per room type, from rates.csv next to the data file:
+    //
+    //   roomType,from,to,weekday,weekend
+    //   Single,,,1200,1400                          all year
+    //   Single,2025-12-20,2026-01-05,1800,2100      a season; later lines win where they overlap
+    //
+    // Dates are yyyy-MM-dd, from inclusive and to exclusive, empty for open-ended. Weekend
+    // means Friday and Saturday nights. A night no line covers is charged the room's own
+    // price, so without a rates file every bill is what it always was. Quotes are priced
+    // night by night and kept in a bounded LRU cache; loading new rates starts a new engine.
+    static class PricingEngine {
+        static final String HEADER = "roomType,from,to,weekday,weekend";
+        static final PricingEngine FLAT = new PricingEngine(Collections.emptyList());
+        private static final int CACHED = Integer.getInteger("hms.quoteCache", 4096);
+
+        static class Rate {
+            final String roomType;
+            final long fromDay, toDay; // days since 1970-01-01, as Timestamps minutes / 1440
+            final BigDecimal weekday, weekend;
+
+            Rate(String roomType, long fromDay, long toDay, BigDecimal weekday, BigDecimal weekend) {
+                this.roomType = roomType;
+                this.fromDay = fromDay;
+                this.toDay = toDay;
+                this.weekday = weekday;
+                this.weekend = weekend;
+            }
+        }
+
+        /** A stay priced night by night, with the discount and tax of a policy. Shared by the cache, so never changed. */
+        static class Quote {
+            final String roomType;
+            final long fromDay;
+            final int nights;
+            private final Map<BigDecimal, Integer> byRate; // nights per rate; empty when priced elsewhere
+            final BigDecimal subtotal, discount, taxable, tax, total;
+            final RatePolicy policy;
+
+            Quote(String roomType, long fromDay, int nights, Map<BigDecimal, Integer> byRate, BigDecimal subtotal, RatePolicy policy) {
+                this.roomType = roomType;
+                this.fromDay = fromDay;
+                this.nights = nights;
+                this.byRate = Collections.unmodifiableMap(byRate);
+                this.subtotal = subtotal;
+                this.policy = policy;
+                this.discount = subtotal.multiply(policy.discountPercent).movePointLeft(2);
+                this.taxable = subtotal.subtract(discount);
+                this.tax = taxable.multiply(policy.taxPercent).movePointLeft(2);
+                this.total = taxable.add(tax);
+            }
+
+            /** Nights per rate, in order of first use; empty if only the subtotal is known. */
+            Map<BigDecimal, Integer> nightsByRate() { return byRate; }
+        }
+
+        private static class Key {
+            final String roomType;
+            final double basePrice;
+            final long fromDay;
+            final int nights;
+            final RatePolicy policy;
+
+            Key(String roomType, double basePrice, long fromDay, int nights, RatePolicy policy) {
+                this.roomType = roomType;
+                this.basePrice = basePrice;
+                this.fromDay = fromDay;
+                this.nights = nights;
+                this.policy = policy;
+            }
+
+            public boolean equals(Object o) {
+                if (!(o instanceof Key)) return false;
+                Key k = (Key) o;
+                return fromDay == k.fromDay && nights == k.nights && Double.compare(basePrice, k.basePrice) == 0
+                        && roomType.equals(k.roomType) && policy.equals(k.policy);
+            }
+
+            public int hashCode() {
+                return Objects.hash(roomType, basePrice, fromDay, nights, policy);
+            }
+        }
+
+        private final Map<String, Rate[]> byType = new HashMap<>(); // case-folded type -> lines in file order
+        private final int lines;
+        private final Map<Key, Quote> cache = new LinkedHashMap<Key, Quote>(CACHED, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, Quote> e) { return size() > CACHED; }
+        };
+        private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+        PricingEngine(List<Rate> rates) {
+            Map<String, List<Rate>> grouped = new HashMap<>();
+            for (Rate r : rates) grouped.computeIfAbsent(RoomStore.key(r.roomType), k -> new ArrayList<>()).add(r);
+            grouped.forEach((type, list) -> byType.put(type, list.toArray(new Rate[0])));
+            this.lines = rates.size();
+        }
+
+        /** The rate table in file; no file means no table. Lines that do not parse are skipped. */
+        static PricingEngine read(Path file) throws IOException {
+            List<Rate> rates = new ArrayList<>();
+            if (!Files.exists(file)) return new PricingEngine(rates);
+            try (BufferedReader r = Files.newBufferedReader(file)) {
+                r.readLine(); // skip header
+                String line;
+                while ((line = r.readLine()) != null) {
+                    String[] f = parseCSVLine(line);
+                    if (f.length < 5 || f[0].trim().isEmpty()) continue;
+                    long from = day(f[1], Long.MIN_VALUE), to = day(f[2], Long.MAX_VALUE);
+                    if (from == Timestamps.INVALID || to == Timestamps.INVALID || from >= to) continue;
+                    try {
+                        rates.add(new Rate(f[0].trim(), from, to, new BigDecimal(f[3].trim()), new BigDecimal(f[4].trim())));
+                    } catch (NumberFormatException ex) {
+                        // not a rate line
+                    }
+                }
+            }
+            return new PricingEngine(rates);
+        }
+
+        private static long day(String date, long open) {
+            if (date.trim().isEmpty()) return open;
+            long m = Timestamps.parse(date.trim() + " 00:00");
+            return m == Timestamps.NONE || m == Timestamps.INVALID ? Timestamps.INVALID : Math.floorDiv(m, 1440);
+        }
+
+        int size() { return lines; }
+
+        /** Friday and Saturday nights; day 0 (1970-01-01) was a Thursday. */
+        static boolean weekend(long day) {
+            long dow = Math.floorMod(day + 3, 7); // 0 = Monday
+            return dow == 4 || dow == 5;
+        }
+
+        /** The rate for one night of a room type: the last line covering the date, else the room's price. */
+        BigDecimal rate(String roomType, BigDecimal basePrice, long day) {
+            Rate[] rates = byType.get(RoomStore.key(roomType));
+            return rates == null ? basePrice : rate(rates, basePrice, day);
+        }
+
+        private static BigDecimal rate(Rate[] rates, BigDecimal basePrice, long day) {
+            for (int i = rates.length - 1; i >= 0; i--) {
+                Rate r = rates[i];
+                if (day >= r.fromDay && day < r.toDay) return weekend(day) ? r.weekend : r.weekday;
+            }
+            return basePrice;
+        }
+
+        /**
+         * The price of nights [fromDay, fromDay + nights) for a room type. A type without
+         * rates costs one multiplication and is not cached; the rest come from the cache
+         * when the same stay was asked before.
+         */
+        Quote quote(String roomType, double basePrice, long fromDay, int nights, RatePolicy policy) {
+            BigDecimal base = BigDecimal.valueOf(basePrice);
+            Rate[] rates = byType.get(RoomStore.key(roomType));
+            if (rates == null)
+                return new Quote(roomType, fromDay, nights, Collections.singletonMap(base, nights), base.multiply(BigDecimal.valueOf(nights)), policy);
+            Key key = new Key(RoomStore.key(roomType), basePrice, fromDay, nights, policy);
+            synchronized (cache) {
+                Quote q = cache.get(key);
+                if (q != null) {
+                    hits.increment();
+                    return q;
+                }
+            }
+            misses.increment();
+            Map<BigDecimal, Integer> byRate = new LinkedHashMap<>();
+            for (int i = 0; i < nights; i++) byRate.merge(rate(rates, base, fromDay + i), 1, Integer::sum);
+            BigDecimal subtotal = BigDecimal.ZERO;
+            for (Map.Entry<BigDecimal, Integer> e : byRate.entrySet()) subtotal = subtotal.add(e.getKey().multiply(BigDecimal.valueOf(e.getValue())));
+            Quote q = new Quote(roomType, fromDay, nights, byRate, subtotal, policy);
+            synchronized (cache) { cache.put(key, q); }
+            return q;
+        }
+
+        /** For the status bar and the load test, e.g. "12 rates, 310 quotes cached, 97% hits". */
+        String stats() {
+            long h = hits.sum(), n = h + misses.sum();
+            int cached;
+            synchronized (cache) { cached = cache.size(); }
+            return lines + " rates, " + cached + " quotes cached, " + (n == 0 ? 0 : 100 * h / n) + "% hits";
+        }
+    }
+
+    // ---- Persistence ----
+    // Saves run on one background thread. A request made while another is still
+    // queued replaces its snapshot, so a burst of saves becomes a single write.
+    // Every write goes to a temp file which is fsynced and then moved over the
+    // data file, so a crash mid-write leaves the previous file intact.
+    static class PersistenceService {
+        static final String HEADER = "roomNumber,roomType,price,guestName,checkIn,checkOut";
+        private static final int PROGRESS_EVERY = 50_000;
+
+        private final Path file;
+        private final Consumer<String> report;
+        private final Consumer<IOException> onError;
+        private final AtomicReference<java.util.function.Supplier<Snapshot>> pending = new AtomicReference<>();
+        private volatile LongConsumer onSaved = seq -> {};
+        private volatile Runnable onDropped = () -> {};
+        private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "bookings-writer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        PersistenceService(Path file, Consumer<String> report, Consumer<IOException> onError) {
+            this.file = file;
+            this.report = report;
+            this.onError = onError;
+        }
+
+        static class Snapshot {
+            final List<Booking> rows;
+            final long seq; // last journal record the rows include
+
+            Snapshot(List<Booking> rows, long seq) {
+                this.rows = rows;
+                this.seq = seq;
+            }
+        }
+
+        /** Called on the writer thread with the journal seq of each snapshot that reached the disk. */
+        void onSaved(LongConsumer onSaved) {
+            this.onSaved = onSaved;
+        }
+
+        /** Called on the writer thread when a snapshot cannot be taken or its write fails. */
+        void onDropped(Runnable onDropped) {
+            this.onDropped = onDropped;
+        }
+
+        /**
+         * Queues a save; returns immediately. The snapshot is taken on the writer thread
+         * right before the write, so saves reach the disk in the order they were taken.
+         */
+        void requestSave(java.util.function.Supplier<Snapshot> snapshot) {
+            if (pending.getAndSet(snapshot) == null) worker.execute(this::drain);
+        }
+
+        private void drain() {
+            java.util.function.Supplier<Snapshot> next = pending.getAndSet(null);
+            if (next == null) return;
+            long started = Metrics.start();
+            Snapshot snap;
+            try {
+                snap = next.get();
+                List<Booking> rows = snap.rows;
+                long t0 = System.nanoTime();
+                long bytes = write(file, rows, done -> report.accept(
+                        String.format("Saving... %d%%", done * 100L / rows.size())));
+                Metrics.SAVE.record(started, rows.size());
+                long ms = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+                report.accept(String.format("Saved %d records (%d KB) to %s in %d ms, %d records/s",
+                        rows.size(), bytes / 1024, file.getFileName(), ms, rows.size() * 1000L / ms));
+            } catch (IOException | RuntimeException ex) {
+                Metrics.SAVE.failed();
+                ex.printStackTrace();
+                onError.accept(ex instanceof IOException ? (IOException) ex : new IOException(ex));
+                onDropped.run();
+                return;
+            }
+            onSaved.accept(snap.seq);
+        }
+
+        /** Waits for queued saves to reach the disk, e.g. before the app exits. */
+        void shutdown() {
+            worker.shutdown();
+            try { worker.awaitTermination(10, TimeUnit.SECONDS); }
+            catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+        }
+
+        /** Queues a small text file (header included in lines) to be replaced atomically. */
+        void writeLater(Path target, List<String> lines) {
+            worker.execute(() -> {
+                try {
+                    replace(target, w -> { for (String l : lines) { w.write(l); w.write("\n"); } });
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    onError.accept(ex);
+                }
+            });
+        }
+
+        /** Reads a data file in whichever format it was saved in. */
+        static BulkCsvLoader.Result load(Path file) throws IOException {
+            return BinarySnapshot.isBinary(file) ? BinarySnapshot.load(file) : BulkCsvLoader.load(file);
+        }
+
+        /** Writes rows to file atomically, as CSV or as a binary snapshot for *.bin, and returns the bytes written. */
+        static synchronized long write(Path file, List<Booking> rows, Consumer<Integer> progress) throws IOException {
+            if (file.getFileName().toString().endsWith(".bin")) return BinarySnapshot.write(file, rows);
+            return replace(file, w -> {
+                w.write(HEADER); w.write("\n");
+                int done = 0;
+                for (Booking b : rows) {
+                    w.write(b.toCSV()); w.write("\n");
+                    if (++done % PROGRESS_EVERY == 0 && progress != null) progress.accept(done);
+                }
+            });
+        }
+
+        interface Body {
+            void writeTo(BufferedWriter w) throws IOException;
+        }
+
+        interface ChannelBody {
+            void writeTo(FileChannel ch) throws IOException;
+        }
+
+        /** replaceBytes for text, written through a buffered UTF-8 writer. */
+        static long replace(Path file, Body body) throws IOException {
+            return replaceBytes(file, ch -> {
+                BufferedWriter w = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8.newEncoder(), 1 << 16));
+                body.writeTo(w);
+                w.flush();
+            });
+        }
+
+        /** Temp file, fsync, atomic move. Returns the number of bytes written. */
+        static long replaceBytes(Path file, ChannelBody body) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            long bytes;
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                body.writeTo(ch);
+                ch.force(true);
+                bytes = ch.size();
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return bytes;
+        }
+    }
+
+    // ---- Binary snapshot ----
+    // An alternative to bookings.csv, picked by naming the data file *.bin
+    // (-Dhms.dataFile=bookings.bin). Every string goes into one table written once, and
+    // each room is a fixed-width record of table ids plus the price as a raw double, so
+    // a load is a memory-mapped sweep with no tokenizing or number parsing.
+    //
+    //   0  "HMSB"  4  version  8  rows  12  strings  16  strings offset (long)  24  reserved
+    //   32 rows x {roomNumber, roomType, price (double), guestName, checkIn, checkOut}
+    //   strings offset: int[strings + 1] byte offsets into the UTF-8 blob that follows
+    //
+    // String 0 is "". Ints and doubles are big-endian.
+    static class BinarySnapshot {
+        private static final int MAGIC = 0x484d5342; // "HMSB"
+        static final int VERSION = 1;
+        private static final int HEADER = 32, RECORD = 28;
+
+        static boolean isBinary(Path file) throws IOException {
+            if (!Files.exists(file) || Files.size(file) < 4) return file.getFileName().toString().endsWith(".bin");
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer b = ByteBuffer.allocate(4);
+                ch.read(b, 0);
+                return b.getInt(0) == MAGIC;
+            }
+        }
+
+        static long write(Path file, List<Booking> rows) throws IOException {
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            ids.put("", 0);
+            strings.add("");
+            int[] ref = new int[rows.size() * 5];
+            int k = 0;
+            for (Booking b : rows) {
+                for (String s : new String[] {b.roomNumber, b.roomType, b.guestName, b.checkInDate, b.checkOutDate}) {
+                    String v = s == null ? "" : s;
+                    Integer id = ids.get(v);
+                    if (id == null) {
+                        id = strings.size();
+                        ids.put(v, id);
+                        strings.add(v);
+                    }
+                    ref[k++] = id;
+                }
+            }
+            byte[][] utf8 = new byte[strings.size()][];
+            long blob = 0;
+            for (int i = 0; i < utf8.length; i++) blob += (utf8[i] = strings.get(i).getBytes(StandardCharsets.UTF_8)).length;
+            if (blob > Integer.MAX_VALUE) throw new IOException("String table over 2 GB");
+            long stringsAt = HEADER + (long) rows.size() * RECORD;
+
+            return PersistenceService.replaceBytes(file, ch -> {
+                ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+                buf.putInt(MAGIC).putInt(VERSION).putInt(rows.size()).putInt(strings.size()).putLong(stringsAt).putLong(0);
+                int r = 0;
+                for (Booking b : rows) {
+                    if (buf.remaining() < RECORD) drain(ch, buf);
+                    int at = r++ * 5;
+                    buf.putInt(ref[at]).putInt(ref[at + 1]).putDouble(b.pricePerNight)
+                            .putInt(ref[at + 2]).putInt(ref[at + 3]).putInt(ref[at + 4]);
+                }
+                int offset = 0;
+                for (int i = 0; i <= utf8.length; i++) {
+                    if (buf.remaining() < 4) drain(ch, buf);
+                    buf.putInt(offset);
+                    if (i < utf8.length) offset += utf8[i].length;
+                }
+                for (byte[] s : utf8) {
+                    for (int off = 0; off < s.length; ) {
+                        if (!buf.hasRemaining()) drain(ch, buf);
+                        int n = Math.min(buf.remaining(), s.length - off);
+                        buf.put(s, off, n);
+                        off += n;
+                    }
+                }
+                drain(ch, buf);
+            });
+        }
+
+        private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        /** Maps the file and rebuilds the rooms; strings and records are decoded in parallel. */
+        static BulkCsvLoader.Result load(Path file) throws IOException {
+            long t0 = System.nanoTime();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                ByteBuffer head = ByteBuffer.allocate(HEADER);
+                while (head.hasRemaining() && ch.read(head, head.position()) > 0) { }
+                if (head.position() < HEADER || head.getInt(0) != MAGIC) throw new IOException(file + " is not a binary snapshot");
+                if (head.getInt(4) != VERSION) throw new IOException(file + " is snapshot version " + head.getInt(4) + ", expected " + VERSION);
+                int rows = head.getInt(8), count = head.getInt(12);
+                long stringsAt = head.getLong(16);
+                if (rows < 0 || count < 1 || stringsAt != HEADER + (long) rows * RECORD || stringsAt + 4L * (count + 1) > size)
+                    throw new IOException(file + " has a damaged header");
+
+                ByteBuffer table = ch.map(FileChannel.MapMode.READ_ONLY, stringsAt, size - stringsAt);
+                int[] offsets = new int[count + 1];
+                table.asIntBuffer().get(offsets);
+                byte[] blob = new byte[table.capacity() - 4 * (count + 1)];
+                if (offsets[count] > blob.length) throw new IOException(file + " is truncated");
+                table.get(4 * (count + 1), blob); // one bulk copy, then strings straight out of it
+                String[] strings = new String[count];
+                IntStream.range(0, count).parallel().forEach(i ->
+                        strings[i] = new String(blob, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+
+                ByteBuffer records = ch.map(FileChannel.MapMode.READ_ONLY, HEADER, (long) rows * RECORD);
+                Booking[] out = new Booking[rows];
+                IntStream.range(0, rows).parallel().forEach(i -> {
+                    int at = i * RECORD;
+                    Booking b = new Booking(strings[records.getInt(at)], strings[records.getInt(at + 4)], records.getDouble(at + 8));
+                    b.guestName = strings[records.getInt(at + 16)];
+                    b.checkInDate = strings[records.getInt(at + 20)];
+                    b.checkOutDate = strings[records.getInt(at + 24)];
+                    out[i] = b;
+                });
+                return new BulkCsvLoader.Result(new ArrayList<>(Arrays.asList(out)), size, System.nanoTime() - t0, 1);
+            } catch (IndexOutOfBoundsException ex) {
+                throw new IOException(file + " is damaged: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // ---- Paged viewer ----
+    // --view [file]: browses a CSV of any size read-only without loading it. A background
+    // scan records the byte offset of every PAGE-th row, so the index costs 8 bytes per
+    // PAGE rows. The table asks for a cell, the page holding it is read with one
+    // positional read and parsed, and the last CACHED pages are kept in an LRU.
+    // Rows appear as the scan passes them, so the window is usable at once.
+    static class PagedCsv implements Closeable {
+        static final int PAGE = 256;
+        private static final int CACHED = 64;
+
+        /** How far the scan has got: rows complete so far and the byte just past the last of them. */
+        private static class Progress {
+            final int rows;
+            final long end;
+            final boolean done;
+
+            Progress(int rows, long end, boolean done) {
+                this.rows = rows;
+                this.end = end;
+                this.done = done;
+            }
+        }
+
+        final Path file;
+        final String[] columns;
+        private final FileChannel ch;
+        private volatile long[] pageStarts = new long[64]; // scan thread writes, readers see up to progress.rows
+        private volatile Progress progress;
+        private volatile boolean closed;
+        private final Map<Integer, String[][]> pages = new LinkedHashMap<Integer, String[][]>(CACHED, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[][]> e) { return size() > CACHED; }
+        };
+
+        PagedCsv(Path file) throws IOException {
+            this.file = file;
+            this.ch = FileChannel.open(file, StandardOpenOption.READ);
+            long[] header = {0};
+            String first = readRow(0, header);
+            columns = first == null ? new String[0] : parseCSVLine(first);
+            pageStarts[0] = header[0];
+            progress = new Progress(0, header[0], header[0] >= ch.size());
+        }
+
+        /** Scans the rest of the file, calling onProgress now and then and once at the end. */
+        void index(Runnable onProgress) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            long pos = progress.end, rowStart = pos, size = ch.size();
+            int rows = 0;
+            boolean quoted = false;
+            long lastReport = System.nanoTime();
+            while (pos < size && !closed) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+                buf.flip();
+                for (int i = 0; i < n; i++) {
+                    byte c = buf.get(i);
+                    if (c == '"') quoted = !quoted;
+                    else if (c == '\n' && !quoted) {
+                        rowStart = pos + i + 1;
+                        if (++rows % PAGE == 0) startPage(rows / PAGE, rowStart);
+                    }
+                }
+                pos += n;
+                progress = new Progress(rows, rowStart, false);
+                if (System.nanoTime() - lastReport > 100_000_000L) {
+                    lastReport = System.nanoTime();
+                    onProgress.run();
+                }
+            }
+            if (rowStart < size && !closed && ++rows % PAGE == 0) startPage(rows / PAGE, size); // last row without a newline
+            progress = new Progress(rows, size, true);
+            onProgress.run();
+        }
+
+        private void startPage(int page, long offset) {
+            long[] a = pageStarts;
+            if (page == a.length) a = Arrays.copyOf(a, a.length * 2);
+            a[page] = offset;
+            pageStarts = a;
+        }
+
+        int rowCount() { return progress.rows; }
+        boolean indexed() { return progress.done; }
+        int cachedPages() { synchronized (pages) { return pages.size(); } }
+
+        /** The fields of a row, reading and parsing its page if it is not cached. */
+        String[] row(int r) {
+            int p = r / PAGE;
+            String[][] page;
+            synchronized (pages) { page = pages.get(p); }
+            if (page == null || r % PAGE >= page.length) {
+                page = readPage(p);
+                synchronized (pages) { pages.put(p, page); }
+            }
+            return page[r % PAGE];
+        }
+
+        private String[][] readPage(int p) {
+            Progress at = progress;
+            int count = Math.min(PAGE, at.rows - p * PAGE);
+            long start = pageStarts[p];
+            long end = (p + 1) * PAGE <= at.rows ? pageStarts[p + 1] : at.end;
+            try {
+                ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+                while (buf.hasRemaining() && ch.read(buf, start + buf.position()) > 0) { }
+                String text = new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+                String[][] rows = new String[count][];
+                int from = 0;
+                boolean quoted = false;
+                for (int i = 0, k = 0; k < count; i++) {
+                    if (i == text.length() || (text.charAt(i) == '\n' && !quoted)) {
+                        int to = i > from && text.charAt(i - 1) == '\r' ? i - 1 : i;
+                        rows[k++] = parseCSVLine(text.substring(from, to));
+                        from = i + 1;
+                        if (i == text.length()) break;
+                    } else if (text.charAt(i) == '"') {
+                        quoted = !quoted;
+                    }
+                }
+                for (int k = 0; k < count; k++) if (rows[k] == null) rows[k] = new String[0];
+                return rows;
+            } catch (IOException ex) {
+                String[][] rows = new String[count][];
+                Arrays.fill(rows, new String[] {"<" + ex.getMessage() + ">"});
+                return rows;
+            }
+        }
+
+        /** Reads one row starting at offset; stores the offset just past it in next[0]. */
+        private String readRow(long offset, long[] next) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ByteBuffer buf = ByteBuffer.allocate(8192);
+            long pos = offset;
+            boolean quoted = false;
+            while (true) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    byte c = buf.get(i);
+                    if (c == '"') quoted = !quoted;
+                    else if (c == '\n' && !quoted) {
+                        next[0] = pos + i + 1;
+                        return trimCr(line.toString(StandardCharsets.UTF_8));
+                    }
+                    line.write(c);
+                }
+                pos += n;
+            }
+            next[0] = pos;
+            return line.size() == 0 ? null : trimCr(line.toString(StandardCharsets.UTF_8));
+        }
+
+        private static String trimCr(String s) {
+            return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+        }
+
+        public void close() throws IOException {
+            closed = true;
+            ch.close();
+        }
+    }
+
+    private static class PagedTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private final PagedCsv csv;
+        private int rows; // as last announced to the table, EDT only
+
+        PagedTableModel(PagedCsv csv) {
+            this.csv = csv;
+        }
+
+        /** Tells the table about rows the scan has found since the last call. EDT only. */
+        void grow() {
+            int n = csv.rowCount();
+            if (n > rows) {
+                int from = rows;
+                rows = n;
+                fireTableRowsInserted(from, n - 1);
+            }
+        }
+
+        public int getRowCount() { return rows; }
+        public int getColumnCount() { return csv.columns.length; }
+        public String getColumnName(int c) { return csv.columns[c]; }
+
+        public Object getValueAt(int r, int c) {
+            String[] f = csv.row(r);
+            return c < f.length ? f[c] : "";
+        }
+    }
+
+    /** Opens a read-only window over the file; the scan runs on its own thread. */
+    static void view(Path file) throws IOException {
+        PagedCsv csv = new PagedCsv(file);
+        PagedTableModel model = new PagedTableModel(csv);
+        JFrame frame = new JFrame(file.getFileName() + " - Hotel Management System");
+        JTable table = new JTable(model);
+        table.setRowHeight(24);
+        table.setFillsViewportHeight(true);
+        JLabel status = new JLabel(" Indexing...");
+        status.setOpaque(true);
+        status.setBackground(new Color(45,118,200));
+        status.setForeground(Color.WHITE);
+        status.setBorder(new EmptyBorder(8,12,8,12));
+        frame.getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        frame.getContentPane().add(status, BorderLayout.SOUTH);
+        frame.setSize(980, 640);
+        frame.setLocationRelativeTo(null);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        long t0 = System.nanoTime();
+        Runnable update = () -> {
+            model.grow();
+            Runtime rt = Runtime.getRuntime();
+            status.setText(String.format(" %,d rows%s | %d pages cached | heap %d MB",
+                    model.getRowCount(), csv.indexed() ? " indexed in " + (System.nanoTime() - t0) / 1_000_000 + " ms" : ", indexing...",
+                    csv.cachedPages(), (rt.totalMemory() - rt.freeMemory()) >> 20));
+        };
+        Thread scan = new Thread(() -> {
+            try { csv.index(() -> SwingUtilities.invokeLater(update)); }
+            catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> status.setText(" Indexing failed: " + ex.getMessage()));
+            }
+        }, "csv-indexer");
+        scan.setDaemon(true);
+        scan.start();
+        // the cache line in the status bar follows scrolling too
+        new javax.swing.Timer(1000, e -> update.run()).start();
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                try { csv.close(); } catch (IOException ignored) {}
+            }
+        });
+        frame.setVisible(true);
+    }
+
+    // ---- Bulk loader ----
+    // Memory-maps bookings.csv, cuts it into chunks at record boundaries and parses
+    // the chunks in parallel on the common fork-join pool. Quotes may hide commas
+    // and newlines, so each chunk's starting quote state is worked out first from
+    // the parity of the quote counts of the chunks before it. The tokenizer reads
+    // bytes straight from the mapping into one scratch buffer per chunk and parses
+    // prices without building a String. Field semantics match parseCSVLine.
+    static class BulkCsvLoader {
+        private static final long MIN_CHUNK = 1 << 20;
+        private static final long MAX_CHUNK = 1 << 30;
+
+        static class Result {
+            final List<Booking> rows;
+            final long bytes, nanos;
+            final int chunks;
+
+            Result(List<Booking> rows, long bytes, long nanos, int chunks) {
+                this.rows = rows;
+                this.bytes = bytes;
+                this.nanos = nanos;
+                this.chunks = chunks;
+            }
+
+            String summary() {
+                long ms = Math.max(1, nanos / 1_000_000);
+                return String.format("%d records, %.1f MB in %d ms (%.1f MB/s, %d records/s, %d chunks)",
+                        rows.size(), bytes / 1048576.0, ms, bytes / 1048576.0 * 1000 / ms, rows.size() * 1000L / ms, chunks);
+            }
+        }
+
+        static Result load(Path file) throws IOException {
+            long t0 = System.nanoTime();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                int k = (int) Math.max(size / MAX_CHUNK + 1,
+                        Math.min(Runtime.getRuntime().availableProcessors() * 4L, size / MIN_CHUNK));
+                long[] raw = new long[k + 1];
+                for (int i = 0; i <= k; i++) raw[i] = size * i / k;
+
+                // quote parity of each raw chunk, then the quote state at each chunk start
+                boolean[] odd = new boolean[k];
+                IntStream.range(0, k).parallel().forEach(i -> odd[i] = oddQuotes(map(ch, raw[i], raw[i + 1] - raw[i])));
+                long[] cut = new long[k + 1];
+                cut[k] = size;
+                boolean inQuotes = false;
+                for (int i = 1; i < k; i++) {
+                    inQuotes ^= odd[i - 1];
+                    cut[i] = Math.max(cut[i - 1], nextRecord(ch, raw[i], size, inQuotes));
+                }
+
+                List<List<Booking>> parts = IntStream.range(0, k).parallel()
+                        .mapToObj(i -> parse(map(ch, cut[i], cut[i + 1] - cut[i]), i == 0))
+                        .collect(Collectors.toList());
+                List<Booking> rows = new ArrayList<>();
+                for (List<Booking> p : parts) rows.addAll(p);
+                return new Result(rows, size, System.nanoTime() - t0, k);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private static java.nio.MappedByteBuffer map(FileChannel ch, long pos, long len) {
+            try { return ch.map(FileChannel.MapMode.READ_ONLY, pos, len); }
+            catch (IOException ex) { throw new UncheckedIOException(ex); }
+        }
+
+        private static boolean oddQuotes(java.nio.ByteBuffer buf) {
+            boolean odd = false;
+            for (int i = 0, n = buf.limit(); i < n; i++) if (buf.get(i) == '"') odd = !odd;
+            return odd;
+        }
+
+        /** First offset at or after pos that starts a record, given the quote state at pos. */
+        private static long nextRecord(FileChannel ch, long pos, long size, boolean inQuotes) {
+            java.nio.ByteBuffer buf = map(ch, pos, Math.min(size - pos, MAX_CHUNK));
+            for (int i = 0, n = buf.limit(); i < n; i++) {
+                byte c = buf.get(i);
+                if (c == '"') inQuotes = !inQuotes;
+                else if (!inQuotes && (c == '\n' || c == '\r')) {
+                    if (c == '\r' && i + 1 < n && buf.get(i + 1) == '\n') i++;
+                    return pos + i + 1;
+                }
+            }
+            return size;
+        }
+
+        private static List<Booking> parse(java.nio.ByteBuffer buf, boolean skipHeader) {
+            List<Booking> rows = new ArrayList<>();
+            byte[] scratch = new byte[256];
+            String[] f = new String[6];
+            int nf = 0, len = 0;
+            double price = 0;
+            boolean inQuotes = false, header = skipHeader;
+            int n = buf.limit(), recordStart = 0;
+            for (int i = 0; i <= n; i++) {
+                boolean eof = i == n;
+                byte c = eof ? (byte) '\n' : buf.get(i);
+                if (inQuotes && !eof) {
+                    if (c == '"') {
+                        if (i + 1 < n && buf.get(i + 1) == '"') { c = '"'; i++; }
+                        else { inQuotes = false; continue; }
+                    }
+                } else if (c == '"') {
+                    inQuotes = true;
+                    continue;
+                } else if (c == ',' || c == '\n' || c == '\r') {
+                    if (eof && i == recordStart) break; // no partial record after the last newline
+                    if (nf == 2) price = parsePrice(scratch, len);
+                    else if (nf < f.length) f[nf] = new String(scratch, 0, len, StandardCharsets.UTF_8);
+                    nf++;
+                    len = 0;
+                    if (c != ',') {
+                        if (header) header = false;
+                        else rows.add(toBooking(f, nf, price));
+                        if (c == '\r' && i + 1 < n && buf.get(i + 1) == '\n') i++;
+                        nf = 0;
+                        price = 0;
+                        recordStart = i + 1;
+                    }
+                    continue;
+                }
+                if (len == scratch.length) scratch = Arrays.copyOf(scratch, len * 2);
+                scratch[len++] = c;
+            }
+            return rows;
+        }
+
+        private static Booking toBooking(String[] f, int nf, double price) {
+            Booking b = new Booking(nf > 0 ? f[0] : "", nf > 1 ? f[1] : "", nf > 2 ? price : 0);
+            b.guestName = nf > 3 ? f[3] : "";
+            b.checkInDate = nf > 4 ? f[4] : "";
+            b.checkOutDate = nf > 5 ? f[5] : "";
+            return b;
+        }
+
+        /** Plain decimals are parsed in place; anything else goes through Double.parseDouble. */
+        private static double parsePrice(byte[] s, int len) {
+            int i = 0;
+            boolean neg = false;
+            if (len > 0 && (s[0] == '-' || s[0] == '+')) { neg = s[0] == '-'; i++; }
+            long mant = 0;
+            int digits = 0, scale = 0;
+            boolean dot = false;
+            for (; i < len; i++) {
+                byte c = s[i];
+                if (c >= '0' && c <= '9') {
+                    mant = mant * 10 + (c - '0');
+                    digits++;
+                    if (dot) scale++;
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                } else {
+                    digits = -1;
+                    break;
+                }
+            }
+            // up to 15 digits and 22 decimals both fit exactly in a double, so one division rounds correctly
+            if (digits > 0 && digits <= 15 && scale <= 22) {
+                double v = scale == 0 ? mant : mant / POW10[scale];
+                return neg ? -v : v;
+            }
+            try { return Double.parseDouble(new String(s, 0, len, StandardCharsets.UTF_8)); }
+            catch (NumberFormatException ex) { return 0; }
+        }
+
+        private static final double[] POW10 = new double[23];
+        static {
+            POW10[0] = 1;
+            for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // ---- Journal ----
+    // Every addRoom / checkIn / checkOut is appended here as one CSV record, prefixed
+    // with a sequence number. A single writer thread drains whatever has queued up,
+    // writes it and fsyncs once (group commit); the callers waiting on that batch all
+    // return after the one fsync. Startup replays the journal on top of
+    // the last snapshot; once the file passes a size threshold a fresh snapshot is
+    // saved and the records it already covers are dropped from the journal.
+    private static class BookingJournal {
+        private static final long COMPACT_AT = Long.getLong("hms.journal.compactBytes", 4L << 20);
+        private static final Object STOP = new Object();
+
+        private final Path file;
+        private final Runnable onThreshold;
+        private final Consumer<IOException> onError;
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong seq;
+        private final AtomicBoolean compacting = new AtomicBoolean();
+        private final Thread writer;
+        private FileChannel ch; // writer thread only
+
+        BookingJournal(Path file, Runnable onThreshold, Consumer<IOException> onError) {
+            this.file = file;
+            this.onThreshold = onThreshold;
+            this.onError = onError;
+            this.seq = new AtomicLong(maxSeq(file));
+            writer = new Thread(this::run, "journal-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        long lastSeq() { return seq.get(); }
+
+        /**
+         * Numbers the change and queues it for the writer's next group commit. Called by
+         * the thread that made the change, holding the room's lock, so a room's records
+         * are numbered in the order its changes happened.
+         */
+        void record(ChangeBus.Change c) {
+            String r = text(c);
+            if (r != null) queue.add(seq.incrementAndGet() + "," + r);
+        }
+
+        private static String text(ChangeBus.Change c) {
+            Booking b = c.room;
+            switch (c.kind) {
+                case ROOM_ADDED: return "A," + Booking.escapeCSV(b.roomNumber) + "," + Booking.escapeCSV(b.roomType) + "," + b.pricePerNight;
+                case CHECKED_IN: return "I," + Booking.escapeCSV(b.roomNumber) + "," + Booking.escapeCSV(b.guestName) + "," + Booking.escapeCSV(b.checkInDate);
+                case CHECKED_OUT: return "O," + Booking.escapeCSV(b.roomNumber) + "," + Booking.escapeCSV(b.checkOutDate);
+                default: return null; // a load changes nothing on disk
+            }
+        }
+
+        /**
+         * Completes once every record queued before the call, by any thread, has been
+         * forced to disk; fails with the IOException if that write did not make it.
+         */
+        java.util.concurrent.CompletableFuture<Void> synced() {
+            java.util.concurrent.CompletableFuture<Void> f = new java.util.concurrent.CompletableFuture<>();
+            queue.add(f);
+            return f;
+        }
+
+        /** Waits for synced(); a failed write or a writer that does not answer in ten seconds is UNAVAILABLE. */
+        void awaitSynced() {
+            try { synced().orTimeout(10, TimeUnit.SECONDS).join(); } // join keeps an interrupt for later
+            catch (java.util.concurrent.CompletionException ex) {
+                Throwable cause = ex.getCause();
+                String why = cause instanceof java.util.concurrent.TimeoutException ? "the journal did not answer" : cause.getMessage();
+                throw new BookingException(BookingException.Kind.UNAVAILABLE, "The change was made but may not be on disk: " + why);
+            }
+        }
+
+        /** Drops every record up to seq once a snapshot containing them is on disk. */
+        void compactTo(long upTo) {
+            queue.add(upTo);
+        }
+
+        /** The snapshot asked for at the threshold never reached the disk; the next batch may ask again. */
+        void saveDropped() {
+            compacting.set(false);
+        }
+
+        /** Flushes queued records and stops the writer. */
+        void shutdown() {
+            queue.add(STOP);
+            try { writer.join(10_000); }
+            catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void run() {
+            List<Object> batch = new ArrayList<>();
+            List<java.util.concurrent.CompletableFuture<Void>> waiting = new ArrayList<>();
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+                    boolean stop = false;
+                    for (Object o : batch) {
+                        if (o == STOP) { stop = true; break; }
+                        if (o instanceof Long) { commit(out); rewrite((Long) o); }
+                        else if (o instanceof java.util.concurrent.CompletableFuture) waiting.add((java.util.concurrent.CompletableFuture<Void>) o);
+                        else out.append((String) o).append('\n');
+                    }
+                    commit(out);
+                    for (java.util.concurrent.CompletableFuture<Void> f : waiting) f.complete(null);
+                    waiting.clear();
+                    batch.clear();
+                    if (stop) { channel().close(); return; }
+                    if (channel().size() > COMPACT_AT && compacting.compareAndSet(false, true)) onThreshold.run();
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    onError.accept(ex);
+                    for (Object o : batch)
+                        if (o instanceof java.util.concurrent.CompletableFuture) ((java.util.concurrent.CompletableFuture<Void>) o).completeExceptionally(ex);
+                    waiting.clear();
+                    batch.clear();
+                    out.setLength(0);
+                    compacting.set(false); // a rewrite in the dropped batch never ran
+                }
+            }
+        }
+
+        private FileChannel channel() throws IOException {
+            if (ch == null || !ch.isOpen())
+                ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return ch;
+        }
+
+        private void commit(StringBuilder out) throws IOException {
+            if (out.length() == 0) return;
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+            FileChannel c = channel();
+            while (buf.hasRemaining()) c.write(buf);
+            c.force(false);
+            out.setLength(0);
+        }
+
+        private void rewrite(long upTo) throws IOException {
+            try {
+                StringBuilder keep = new StringBuilder();
+                for (String line : lines(file)) if (seqOf(line) > upTo) keep.append(line).append('\n');
+                channel().close();
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(keep.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buf.hasRemaining()) c.write(buf);
+                    c.force(true);
+                }
+                try {
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                compacting.set(false);
+            }
+        }
+
+        /** Complete records only: a torn last line from a crash is ignored. */
+        private static List<String> lines(Path file) throws IOException {
+            if (!Files.exists(file)) return Collections.emptyList();
+            String all = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            List<String> lines = new ArrayList<>();
+            int start = 0;
+            for (int nl; (nl = all.indexOf('\n', start)) >= 0; start = nl + 1) lines.add(all.substring(start, nl));
+            return lines;
+        }
+
+        private static long seqOf(String line) {
+            int comma = line.indexOf(',');
+            try { return Long.parseLong(comma < 0 ? line : line.substring(0, comma)); }
+            catch (NumberFormatException ex) { return -1; }
+        }
+
+        private static long maxSeq(Path file) {
+            long max = 0;
+            try { for (String line : lines(file)) max = Math.max(max, seqOf(line)); }
+            catch (IOException ex) { ex.printStackTrace(); }
+            return max;
+        }
+
+        /** Applies the journal on top of snapshot rows and returns how many records were replayed. */
+        static int replay(List<Booking> rows, Path file) throws IOException {
+            Map<String, Booking> byRoom = new HashMap<>();
+            for (Booking b : rows) byRoom.putIfAbsent(RoomStore.key(b.roomNumber), b);
+            int applied = 0;
+            for (String line : lines(file)) {
+                String[] f = parseCSVLine(line);
+                if (f.length < 3) continue;
+                Booking b = byRoom.get(RoomStore.key(f[2]));
+                // every record sets the room's whole state, so replaying one the snapshot already has is harmless
+                switch (f[1]) {
+                    case "A":
+                        if (b != null || f.length < 5) continue;
+                        double price;
+                        try { price = Double.parseDouble(f[4]); } catch (NumberFormatException ex) { price = 0; }
+                        b = new Booking(f[2], f[3], price);
+                        rows.add(b);
+                        byRoom.put(RoomStore.key(f[2]), b);
+                        break;
+                    case "I":
+                        if (b == null || f.length < 5) continue;
+                        b.guestName = f[3];
+                        b.checkInDate = f[4];
+                        b.checkOutDate = "";
+                        break;
+                    case "O":
+                        if (b == null || f.length < 4) continue;
+                        b.guestName = "";
+                        b.checkInDate = "";
+                        b.checkOutDate = f[3];
+                        break;
+                    default:
+                        continue;
+                }
+                applied++;
+            }
+            return applied;
+        }
+    }
+
+    // ---- Self check ----
+    // --selfcheck: regression cases for edge conditions that normal use rarely reaches.
+    // Each case works in its own scratch directory and adds what it found wrong to failures.
+    static class SelfCheck {
+        static boolean run(PrintStream out) throws IOException, InterruptedException {
+            Path dir = Files.createTempDirectory("hms-check");
+            List<String> failures = new ArrayList<>();
+            journalCompaction(dir.resolve("journal"), failures);
+            interruptedPublish(dir.resolve("bus"), failures);
+            journalBeforeBus(dir.resolve("journal-order"), failures);
+            syncedOnReturn(dir.resolve("journal-sync"), failures);
+            failedSnapshot(dir.resolve("save"), failures);
+            frozenSnapshot(dir.resolve("snapshot"), failures);
+            tableRows(failures);
+            columnarRoundTrip(failures);
+            policyProperty(failures);
+            roomsPaging(dir.resolve("http"), failures);
+            httpRoutes(dir.resolve("http-routes"), failures);
+            pagedCsv(dir, failures);
+            historyNames(dir.resolve("history"), failures);
+            batchComments(dir.resolve("batch"), failures);
+            columnarDesk(dir.resolve("columnar"), failures);
+            for (String f : failures) out.println("FAIL " + f);
+            out.println(failures.isEmpty() ? "OK" : failures.size() + " failures");
+            return failures.isEmpty();
+        }
+
+        /**
+         * The snapshot taken at the journal threshold fails to save (the data file is a
+         * directory); once the save can succeed the journal must still get compacted.
+         */
+        static void journalCompaction(Path dir, List<String> failures) throws IOException, InterruptedException {
+            Path blocked = Files.createDirectories(dir.resolve("bookings.csv")).resolve("keep");
+            Files.createFile(blocked);
+            java.util.concurrent.atomic.AtomicInteger saveFailures = new java.util.concurrent.atomic.AtomicInteger();
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> saveFailures.incrementAndGet());
+            desk.syncEachChange(false); // this case is about the size of the journal, not waiting for it
+            String guest = "g".repeat(1000);
+            for (int i = 0; i < 100; i++) desk.addRoom("R" + i, "Single", "100");
+            int[] next = {0};
+            Runnable burst = () -> {
+                for (int k = 0; k < 100; k++, next[0]++) {
+                    desk.checkIn("R" + next[0] % 100, guest);
+                    desk.checkOut("R" + next[0] % 100, RatePolicy.DEFAULT, Timestamps.now());
+                }
+            };
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            while (saveFailures.get() == 0 && System.nanoTime() < deadline) {
+                burst.run();
+                Thread.sleep(20);
+            }
+            if (saveFailures.get() == 0) failures.add("journal: no compaction was attempted past " + BookingJournal.COMPACT_AT + " bytes");
+            Files.delete(blocked);
+            Files.delete(blocked.getParent());
+            while (Files.size(desk.journalFile) > BookingJournal.COMPACT_AT && System.nanoTime() < deadline) {
+                burst.run();
+                Thread.sleep(20);
+            }
+            if (Files.size(desk.journalFile) > BookingJournal.COMPACT_AT)
+                failures.add("journal: still " + Files.size(desk.journalFile) + " bytes after a failed compaction save");
+            desk.shutdown();
+        }
+
+        /** A change made by an interrupted thread is still journaled and published. */
+        static void interruptedPublish(Path dir, List<String> failures) throws IOException {
+            Files.createDirectories(dir);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> failures.add("bus: " + ex.getMessage()));
+            Thread.currentThread().interrupt();
+            try { desk.addRoom("101", "Single", "100"); }
+            catch (BookingException ex) { failures.add("bus: interrupted add failed after changing the store: " + ex.getMessage()); }
+            if (!Thread.interrupted()) failures.add("bus: the interrupt was lost");
+            desk.shutdown();
+            int reloaded = loadHeadless(desk.dataFile, desk.journalFile).size();
+            if (reloaded != 1) failures.add("bus: " + reloaded + " rooms reload after an interrupted add, expected 1");
+        }
+
+        /** A change is numbered in the journal by the time the call returns, not a bus tick later. */
+        static void journalBeforeBus(Path dir, List<String> failures) throws IOException {
+            Files.createDirectories(dir);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> failures.add("journal order: " + ex.getMessage()));
+            java.util.concurrent.CountDownLatch held = new java.util.concurrent.CountDownLatch(1);
+            desk.changes().subscribe(batch -> {
+                try { held.await(); } catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+            });
+            desk.addRoom("101", "Single", "100");
+            desk.checkIn("101", "Jane Doe");
+            if (desk.journal.lastSeq() != 2) failures.add("journal order: " + desk.journal.lastSeq() + " records numbered while the bus was held, expected 2");
+            held.countDown();
+            desk.shutdown();
+        }
+
+        /** addRoom, checkIn and checkOut return once their records are in the journal file. */
+        static void syncedOnReturn(Path dir, List<String> failures) throws IOException {
+            Files.createDirectories(dir);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> failures.add("journal sync: " + ex.getMessage()));
+            desk.addRoom("101", "Single", "100");
+            journaled(desk, ",A,101,", failures);
+            desk.checkIn("101", "Jane Doe");
+            journaled(desk, ",I,101,", failures);
+            desk.checkOut("101", RatePolicy.DEFAULT, Timestamps.now());
+            journaled(desk, ",O,101,", failures);
+            desk.shutdown();
+        }
+
+        /** A snapshot that throws while being taken still reports the save as dropped, and the next one is written. */
+        static void failedSnapshot(Path dir, List<String> failures) throws IOException, InterruptedException {
+            Files.createDirectories(dir);
+            PersistenceService saves = new PersistenceService(dir.resolve("bookings.csv"), msg -> {}, ex -> {});
+            java.util.concurrent.CountDownLatch dropped = new java.util.concurrent.CountDownLatch(1);
+            java.util.concurrent.CountDownLatch saved = new java.util.concurrent.CountDownLatch(1);
+            saves.onDropped(dropped::countDown);
+            saves.onSaved(seq -> saved.countDown());
+            saves.requestSave(() -> { throw new IllegalStateException("no snapshot"); });
+            if (!dropped.await(10, TimeUnit.SECONDS)) failures.add("save: a snapshot that threw was not reported as dropped");
+            saves.requestSave(() -> new PersistenceService.Snapshot(new ArrayList<>(), 0));
+            if (!saved.await(10, TimeUnit.SECONDS)) failures.add("save: nothing was written after a snapshot threw");
+            saves.shutdown();
+        }
+
+        /**
+         * Rooms are checked in one at a time while snapshots are taken; each snapshot must
+         * hold exactly the check-ins journaled up to its seq, never one more or one less.
+         */
+        static void frozenSnapshot(Path dir, List<String> failures) throws IOException, InterruptedException {
+            Files.createDirectories(dir);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> {});
+            desk.syncEachChange(false);
+            int rooms = 2000;
+            for (int i = 0; i < rooms; i++) desk.addRoom("S" + i, "Single", "100");
+            long base = desk.journal.lastSeq();
+            Thread guests = new Thread(() -> { for (int i = 0; i < rooms; i++) desk.checkIn("S" + i, "Guest " + i); });
+            guests.start();
+            while (guests.isAlive()) {
+                PersistenceService.Snapshot snap = desk.frozenSnapshot();
+                long occupied = snap.rows.stream().filter(Booking::isOccupied).count();
+                if (occupied != snap.seq - base) {
+                    failures.add("snapshot: " + occupied + " rooms occupied but " + (snap.seq - base) + " check-ins journaled");
+                    break;
+                }
+            }
+            guests.join();
+            desk.shutdown();
+        }
+
+        private static void journaled(BookingService desk, String record, List<String> failures) throws IOException {
+            String journal = new String(Files.readAllBytes(desk.journalFile), StandardCharsets.UTF_8);
+            if (!journal.contains(record)) failures.add("journal sync: no" + record + " record when the call returned");
+        }
+
+        /** The table's row count follows the events it is sent, not the store under it. */
+        static void tableRows(List<String> failures) {
+            RoomStore store = new RoomStore();
+            BookingTableModel model = new BookingTableModel(store);
+            List<Booking> added = new ArrayList<>();
+            for (String rn : new String[] {"101", "102", "103"}) {
+                Booking b = new Booking(rn, "Single", 100);
+                store.add(b);
+                added.add(b);
+            }
+            if (model.getRowCount() != 0) failures.add("table: " + model.getRowCount() + " rows before any event");
+            for (Booking b : added) model.roomAdded(b);
+            if (model.getRowCount() != 3) failures.add("table: " + model.getRowCount() + " rows after 3 adds");
+            store.clear();
+            store.add(new Booking("201", "Double", 150));
+            if (model.getRowCount() != 3) failures.add("table: the row count moved with the store before the load was shown");
+            model.roomAdded(added.get(1)); // late event from before the load
+            model.showAll(store.size());
+            if (model.getRowCount() != 1 || !"201".equals(model.getValueAt(0, 0))) failures.add("table: the load shows " + model.getRowCount() + " rows");
+        }
+
+        /** The columnar layout gives back every row exactly, sub-cent prices included. */
+        static void columnarRoundTrip(List<String> failures) {
+            List<Booking> rows = new ArrayList<>();
+            double[] prices = {1200, 99.99, 99.999, 0.1 + 0.2, 1e-3, 12345678.91};
+            for (int i = 0; i < prices.length; i++) {
+                Booking b = new Booking(String.valueOf(100 + i), i % 2 == 0 ? "Single" : "Double", prices[i]);
+                if (i % 3 == 1) { b.guestName = "Guest " + i; b.checkInDate = "2026-10-17 14:05"; }
+                if (i % 3 == 2) b.checkOutDate = "late on the 17th";
+                rows.add(b);
+            }
+            List<Booking> back = ColumnarBookingStore.of(rows).toBookings();
+            for (int i = 0; i < rows.size(); i++) {
+                Booking a = rows.get(i), b = back.get(i);
+                if (a.pricePerNight != b.pricePerNight || !a.toCSV().equals(b.toCSV()))
+                    failures.add("columnar: " + a.toCSV() + " comes back as " + b.toCSV() + " (" + b.pricePerNight + ")");
+            }
+        }
+
+        /** A malformed -Dhms.taxPercent falls back instead of failing RatePolicy's initialization. */
+        static void policyProperty(List<String> failures) {
+            String property = "hms.selfcheck.percent";
+            System.setProperty(property, "5%");
+            try {
+                BigDecimal p = RatePolicy.percent(property, "5");
+                if (p.compareTo(new BigDecimal(5)) != 0) failures.add("policy: \"5%\" read as " + p);
+                System.setProperty(property, " 7.5 ");
+                p = RatePolicy.percent(property, "5");
+                if (p.compareTo(new BigDecimal("7.5")) != 0) failures.add("policy: \" 7.5 \" read as " + p);
+            } catch (RuntimeException ex) {
+                failures.add("policy: " + ex);
+            } finally {
+                System.clearProperty(property);
+            }
+        }
+
+        /** GET /rooms pages by store id and reports the store's size as the total. */
+        @SuppressWarnings("unchecked")
+        static void roomsPaging(Path dir, List<String> failures) throws IOException, InterruptedException {
+            Files.createDirectories(dir);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> failures.add("http: " + ex.getMessage()));
+            for (int i = 0; i < 25; i++) desk.addRoom(String.valueOf(100 + i), "Single", "100");
+            HttpDeskServer server = new HttpDeskServer(desk, new java.net.InetSocketAddress("localhost", 0));
+            server.start();
+            try {
+                java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
+                String base = "http://localhost:" + server.address().getPort() + "/rooms";
+                String[][] cases = {{"?offset=20&limit=10", "120", "5"}, {"?offset=5&limit=2", "105", "2"}, {"?offset=30", null, "0"}, {"", "100", "25"}};
+                for (String[] c : cases) {
+                    java.net.http.HttpResponse<String> r = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + c[0])).build(),
+                            java.net.http.HttpResponse.BodyHandlers.ofString());
+                    List<Object> rooms = (List<Object>) Json.parse(r.body());
+                    String first = rooms.isEmpty() ? null : Json.room((Map<String, Object>) rooms.get(0)).roomNumber;
+                    if (!"25".equals(r.headers().firstValue("X-Total-Count").orElse(null)) || rooms.size() != Integer.parseInt(c[2])
+                            || !Objects.equals(c[1], first))
+                        failures.add("http: /rooms" + c[0] + " gave " + rooms.size() + " rooms of " + r.headers().firstValue("X-Total-Count").orElse("?"));
+                }
+            } finally {
+                server.stop();
+                desk.shutdown();
+            }
+        }
+
+        /** Paths that only start with /rooms are 404s, and a client-sent `at` does not move the bill's clock. */
+        static void httpRoutes(Path dir, List<String> failures) throws IOException, InterruptedException {
+            Files.createDirectories(dir);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> failures.add("http: " + ex.getMessage()));
+            desk.addRoom("101", "Single", "100");
+            desk.checkIn("101", "Jane Doe");
+            HttpDeskServer server = new HttpDeskServer(desk, new java.net.InetSocketAddress("localhost", 0));
+            server.start();
+            try {
+                java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
+                String base = "http://localhost:" + server.address().getPort() + "/";
+                java.net.http.HttpResponse<String> r = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "roomsX101")).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                if (r.statusCode() != 404) failures.add("http: GET /roomsX101 gave " + r.statusCode());
+                long before = Timestamps.now();
+                r = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "bill?room=101&at=0")).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                if (r.statusCode() != 200 || Long.parseLong(Json.text(Json.object(r.body()), "at")) < before)
+                    failures.add("http: /bill?at=0 was priced at the client's minute: " + r.body());
+                r = client.send(java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "checkout"))
+                        .POST(java.net.http.HttpRequest.BodyPublishers.ofString("{\"roomNumber\":\"101\",\"taxPercent\":0,\"discountPercent\":0,\"at\":0}")).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                if (r.statusCode() != 200 || Long.parseLong(Json.text(Json.object(r.body()), "at")) < before)
+                    failures.add("http: /checkout with at 0 was priced at the client's minute: " + r.body());
+            } finally {
+                server.stop();
+                desk.shutdown();
+            }
+        }
+
+        /** Files next to the monthly partitions that only look like them are skipped by the report. */
+        static void historyNames(Path dir, List<String> failures) throws IOException {
+            Files.createDirectories(dir);
+            for (String name : new String[] {"stays-x.csv", "stays-2026-1.csv", "stays-2026-10.csv.bak", "stays-2026-10-old.csv"})
+                Files.write(dir.resolve(name), Arrays.asList("junk"), StandardCharsets.UTF_8);
+            long from = Timestamps.parse("2026-01-01 00:00"), to = Timestamps.parse("2027-01-01 00:00");
+            try {
+                List<StayHistory.ReportRow> rows = StayHistory.report(dir, from, to, Collections.emptyMap());
+                if (!rows.isEmpty()) failures.add("history: " + rows.size() + " rows from files that are not partitions");
+            } catch (RuntimeException ex) {
+                failures.add("history: " + ex);
+            }
+        }
+
+        /** Trailing comments are stripped outside quotes; percentages that are not numbers are rejected per line. */
+        static void batchComments(Path dir, List<String> failures) throws IOException {
+            Files.createDirectories(dir);
+            Path commands = dir.resolve("commands.csv");
+            Files.write(commands, Arrays.asList(
+                    "# rooms for the east wing",
+                    "add,101,Single,1200   # trailing comment",
+                    "add,102,Single,1200",
+                    "checkin,101,Jane Doe",
+                    "checkin,102,\"Suite #4 guest\"  # the '#' in quotes stays",
+                    "checkout,101,five,10",
+                    "checkout,101,5,ten%",
+                    "checkout,101,5,10        # tax %, discount % (optional)"), StandardCharsets.UTF_8);
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {}, ex -> failures.add("batch: " + ex.getMessage()));
+            ByteArrayOutputStream printed = new ByteArrayOutputStream();
+            int rejected = BatchRunner.run(desk, commands, false, new PrintStream(printed, true, StandardCharsets.UTF_8));
+            String out = printed.toString(StandardCharsets.UTF_8);
+            if (rejected != 2 || !out.contains("line 6: invalid tax") || !out.contains("line 7: invalid discount"))
+                failures.add("batch: " + rejected + " rejected, expected lines 6 and 7: " + out.trim());
+            Booking b101 = desk.find("101"), b102 = desk.find("102");
+            if (b101 == null || b101.isOccupied()) failures.add("batch: room 101 should be added and checked out");
+            if (b102 == null || !"Suite #4 guest".equals(b102.guestName)) failures.add("batch: room 102 holds " + (b102 == null ? null : b102.guestName));
+            desk.shutdown();
+        }
+
+        /**
+         * The same batch on the ColumnarDesk and on the BookingService leaves the same rooms
+         * on disk, and a second ColumnarDesk reloads them from the data file and journal.
+         */
+        static void columnarDesk(Path dir, List<String> failures) throws IOException {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 300; i++) lines.add("add,C" + i + "," + (i % 3 == 0 ? "Double" : "Single") + "," + (i == 7 ? "99.999" : "120"));
+            for (int i = 0; i < 300; i += 2) lines.add("checkin,C" + i + ",Guest " + i % 10);
+            for (int i = 0; i < 300; i += 4) lines.add("checkout,C" + i + ",5,10");
+            lines.add("checkin,C2,Someone Else");
+            lines.add("add,c1,Single,100");
+            Map<String, List<Booking>> saved = new HashMap<>();
+            for (String store : new String[] {"columnar", "objects"}) {
+                Path data = Files.createDirectories(dir.resolve(store)).resolve("bookings.csv");
+                Path commands = Files.write(data.resolveSibling("commands.csv"), lines, StandardCharsets.UTF_8);
+                PrintStream quiet = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+                int rejected;
+                if (store.equals("columnar")) {
+                    ColumnarDesk desk = new ColumnarDesk(data, msg -> {}, ex -> failures.add("columnar: " + ex.getMessage()));
+                    rejected = BatchRunner.run(desk, commands, false, quiet);
+                    desk.shutdown();
+                    ColumnarDesk again = new ColumnarDesk(data, msg -> {}, ex -> failures.add("columnar: " + ex.getMessage()));
+                    Booking b = again.find("c7");
+                    if (again.size() != 300 || b == null || b.pricePerNight != 99.999 || again.search("guest 4").size() != 15)
+                        failures.add("columnar: reloaded " + again.size() + " rooms, C7 " + (b == null ? null : b.pricePerNight));
+                    again.shutdown();
+                } else {
+                    BookingService desk = new BookingService(data, msg -> {}, ex -> failures.add("columnar: " + ex.getMessage()));
+                    rejected = BatchRunner.run(desk, commands, false, quiet);
+                    desk.shutdown();
+                }
+                if (rejected != 2) failures.add("columnar: " + store + " desk rejected " + rejected + " commands, expected 2");
+                saved.put(store, loadHeadless(data, data.resolveSibling("bookings.journal")));
+            }
+            List<Booking> a = saved.get("columnar"), b = saved.get("objects");
+            for (int i = 0; i < Math.max(a.size(), b.size()); i++) {
+                Booking x = i < a.size() ? a.get(i) : null, y = i < b.size() ? b.get(i) : null;
+                if (x == null || y == null || !x.roomNumber.equals(y.roomNumber) || !x.roomType.equals(y.roomType)
+                        || x.pricePerNight != y.pricePerNight || !x.guestName.equals(y.guestName) || x.checkOutDate.isEmpty() != y.checkOutDate.isEmpty()) {
+                    failures.add("columnar: row " + i + " is " + (x == null ? null : x.toCSV()) + ", objects have " + (y == null ? null : y.toCSV()));
+                    break;
+                }
+            }
+        }
+
+        /** Files whose rows end exactly on a page boundary, with and without a final newline. */
+        static void pagedCsv(Path dir, List<String> failures) throws IOException {
+            for (int rows : new int[] {PagedCsv.PAGE - 1, PagedCsv.PAGE, 2 * PagedCsv.PAGE, 2 * PagedCsv.PAGE + 1}) {
+                for (boolean newline : new boolean[] {true, false}) {
+                    StringBuilder text = new StringBuilder("Room,Guest\r\n");
+                    for (int r = 0; r < rows; r++) {
+                        text.append(r).append(",\"guest\n").append(r).append('"');
+                        if (r < rows - 1 || newline) text.append("\r\n");
+                    }
+                    Path file = dir.resolve("paged-" + rows + (newline ? "-nl" : "") + ".csv");
+                    Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+                    String name = file.getFileName().toString();
+                    try (PagedCsv csv = new PagedCsv(file)) {
+                        csv.index(() -> {});
+                        if (csv.rowCount() != rows) failures.add(name + ": " + csv.rowCount() + " rows, expected " + rows);
+                        for (int r = csv.rowCount() - 1; r >= 0; r--) {
+                            String[] f = csv.row(r);
+                            if (f.length != 2 || !f[0].equals(String.valueOf(r)) || !f[1].equals("guest\n" + r)) {
+                                failures.add(name + ": row " + r + " reads as " + Arrays.toString(f));
+                                break;
+                            }
+                        }
+                    } catch (RuntimeException ex) {
+                        failures.add(name + ": " + ex);
+                    }
+                }
+            }
+        }
+    }
+
+    // ---- Stay history ----
+    // Every completed checkout is appended, folio and all, to history/stays-yyyy-MM.csv
+    // for the month it ended in. Files are only ever appended to, by one writer thread
+    // with a group-commit fsync like the journal. Reports read the monthly partitions in
+    // parallel and merge per-partition totals, so a year of stays is twelve parallel scans.
+    static class StayHistory {
+        private static final Object STOP = new Object();
+        private static final java.util.regex.Pattern PARTITION = java.util.regex.Pattern.compile("stays-(\\d{4}-\\d{2})\\.csv");
+
+        final Path dir;
+        private final Consumer<IOException> onError;
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private final Thread writer;
+
+        StayHistory(Path dir, Consumer<IOException> onError) {
+            this.dir = dir;
+            this.onError = onError;
+            writer = new Thread(this::run, "history-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        static Path partition(Path dir, String month) {
+            return dir.resolve("stays-" + month + ".csv");
+        }
+
+        /** Queues a completed stay; returns immediately. */
+        void record(Folio f) {
+            queue.add(f);
+        }
+
+        /** Flushes queued stays and stops the writer. */
+        void shutdown() {
+            queue.add(STOP);
+            try { writer.join(10_000); }
+            catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+        }
+
+        private void run() {
+            List<Object> batch = new ArrayList<>();
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+                    boolean stop = batch.remove(STOP);
+                    Map<String, StringBuilder> byMonth = new TreeMap<>();
+                    for (Object o : batch) {
+                        Folio f = (Folio) o;
+                        byMonth.computeIfAbsent(f.checkOut.substring(0, 7), k -> new StringBuilder()).append(f.toCSV()).append('\n');
+                    }
+                    batch.clear();
+                    for (Map.Entry<String, StringBuilder> e : byMonth.entrySet()) append(partition(dir, e.getKey()), e.getValue());
+                    if (stop) return;
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    onError.accept(ex);
+                    batch.clear();
+                }
+            }
+        }
+
+        private static void append(Path file, StringBuilder rows) throws IOException {
+            Files.createDirectories(file.getParent());
+            try (FileChannel c = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                if (c.size() == 0) rows.insert(0, Folio.HEADER + "\n");
+                ByteBuffer buf = ByteBuffer.wrap(rows.toString().getBytes(StandardCharsets.UTF_8));
+                while (buf.hasRemaining()) c.write(buf);
+                c.force(false);
+            }
+        }
+
+        /** One stay as read back for reporting. */
+        static class Stay {
+            final String roomType, month;
+            final long checkOut;
+            final int nights;
+            final BigDecimal roomRevenue, total;
+
+            Stay(String roomType, long checkOut, int nights, BigDecimal roomRevenue, BigDecimal total) {
+                this.roomType = roomType;
+                this.checkOut = checkOut;
+                this.month = Timestamps.format(checkOut).substring(0, 7);
+                this.nights = nights;
+                this.roomRevenue = roomRevenue;
+                this.total = total;
+            }
+
+            private Stay(String roomType, String checkOut, long checkOutMinutes, int nights, BigDecimal roomRevenue, BigDecimal total) {
+                this.roomType = roomType;
+                this.checkOut = checkOutMinutes;
+                this.month = checkOut.substring(0, 7);
+                this.nights = nights;
+                this.roomRevenue = roomRevenue;
+                this.total = total;
+            }
+
+            /** A Folio.toCSV line, or null if it is not one. */
+            static Stay parse(String line) {
+                String[] f = parseCSVLine(line);
+                if (f.length < 14) return null;
+                long out = Timestamps.parse(f[4]);
+                if (out == Timestamps.NONE || out == Timestamps.INVALID) return null;
+                try {
+                    return new Stay(RoomStore.key(f[1]), f[4], out, Integer.parseInt(f[5]), new BigDecimal(f[10]), new BigDecimal(f[13]));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Revenue, ADR and occupancy for one room type in one month. ADR is room revenue
+         * (after discount, before tax) per night sold. Occupancy is nights sold over the
+         * type's rooms times the days of the month inside the report range. A stay
+         * counts toward the month it checked out in, the same way it is billed.
+         */
+        static class ReportRow {
+            final String month, roomType;
+            long stays, nights;
+            BigDecimal roomRevenue = BigDecimal.ZERO, total = BigDecimal.ZERO;
+            double occupancy;
+
+            ReportRow(String month, String roomType) {
+                this.month = month;
+                this.roomType = roomType;
+            }
+
+            void add(Stay s) {
+                stays++;
+                nights += s.nights;
+                roomRevenue = roomRevenue.add(s.roomRevenue);
+                total = total.add(s.total);
+            }
+
+            ReportRow merge(ReportRow o) {
+                stays += o.stays;
+                nights += o.nights;
+                roomRevenue = roomRevenue.add(o.roomRevenue);
+                total = total.add(o.total);
+                return this;
+            }
+
+            BigDecimal adr() {
+                return nights == 0 ? BigDecimal.ZERO : roomRevenue.divide(BigDecimal.valueOf(nights), 2, RoundingMode.HALF_UP);
+            }
+
+            static final String HEADER = "month,roomType,stays,nights,roomRevenue,totalRevenue,adr,occupancyPercent";
+
+            String toCSV() {
+                return month + "," + Booking.escapeCSV(roomType) + "," + stays + "," + nights + "," + Folio.money(roomRevenue)
+                        + "," + Folio.money(total) + "," + adr().toPlainString() + "," + String.format(Locale.ROOT, "%.1f", occupancy * 100);
+            }
+        }
+
+        /**
+         * Aggregates stays that checked out in [from, to) by month and room type, one
+         * parallel task per monthly partition. roomsOfType gives the inventory used for
+         * occupancy; types it does not know get 0.
+         */
+        static List<ReportRow> report(Path dir, long from, long to, Map<String, Integer> roomsOfType) throws IOException {
+            String first = Timestamps.format(from).substring(0, 7), last = Timestamps.format(to - 1).substring(0, 7);
+            List<Path> parts = new ArrayList<>();
+            if (Files.isDirectory(dir)) {
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "stays-*.csv")) {
+                    for (Path p : ds) {
+                        java.util.regex.Matcher m = PARTITION.matcher(p.getFileName().toString());
+                        if (!m.matches()) continue; // stays-old.csv and the like are not partitions
+                        String month = m.group(1);
+                        if (month.compareTo(first) >= 0 && month.compareTo(last) <= 0) parts.add(p);
+                    }
+                }
+            }
+            Map<String, ReportRow> merged;
+            try {
+                merged = parts.parallelStream()
+                        .map(p -> aggregate(p, from, to))
+                        .reduce(new TreeMap<>(), (a, b) -> {
+                            Map<String, ReportRow> m = new TreeMap<>(a);
+                            b.forEach((k, v) -> m.merge(k, v, ReportRow::merge));
+                            return m;
+                        });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            List<ReportRow> out = new ArrayList<>(merged.values());
+            for (ReportRow r : out) {
+                long monthStart = Timestamps.parse(r.month + "-01 00:00");
+                long next = Timestamps.parse(java.time.YearMonth.parse(r.month).plusMonths(1) + "-01 00:00");
+                long days = (Math.min(next, to) - Math.max(monthStart, from) + 1439) / 1440;
+                long available = days * roomsOfType.getOrDefault(r.roomType, 0);
+                r.occupancy = available == 0 ? 0 : (double) r.nights / available;
+            }
+            return out;
+        }
+
+        /** Per month and type totals of one partition, keyed "yyyy-MM,type". */
+        private static Map<String, ReportRow> aggregate(Path file, long from, long to) {
+            Map<String, ReportRow> rows = new TreeMap<>();
+            String text;
+            try { text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8); }
+            catch (IOException ex) { throw new UncheckedIOException(ex); }
+            int start = text.indexOf('\n') + 1; // header
+            boolean quoted = false;
+            for (int i = start; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') quoted = !quoted;
+                else if (c == '\n' && !quoted) {
+                    Stay s = Stay.parse(text.substring(start, i));
+                    start = i + 1;
+                    if (s == null || s.checkOut < from || s.checkOut >= to) continue;
+                    rows.computeIfAbsent(s.month + "," + s.roomType, k -> new ReportRow(s.month, s.roomType)).add(s);
+                }
+            }
+            return rows; // a torn last line from a crash has no newline and is skipped
+        }
+    }
+
+    // ---- Metrics ----
+    // Per-operation counters and latency histograms, read through JMX
+    // (io.github.ubgadeparth.hms:type=Metrics) and a one-line readout in the status bar.
+    // Recording is a few atomic adds. -Dhms.metrics=false turns it off: ENABLED is a
+    // constant, so the JIT drops the recording code and only a branch remains.
+    static class Metrics implements MetricsMXBean {
+        static final boolean ENABLED = !"false".equals(System.getProperty("hms.metrics"));
+
+        static final Op LOAD = new Op("load"), SAVE = new Op("save"), SEARCH = new Op("search"),
+                REFRESH = new Op("refresh"), BILL = new Op("bill"), HTTP = new Op("http");
+        static final Op[] ALL = {LOAD, SAVE, SEARCH, REFRESH, BILL, HTTP};
+        static final Metrics INSTANCE = new Metrics();
+
+        /** A start time for record, or 0 when metrics are off. */
+        static long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Latencies go into log-linear buckets: a power of two split into four, so a
+         * percentile is the upper edge of its bucket and at most 25% above the true value.
+         */
+        static class Op {
+            private static final int BUCKETS = 256;
+
+            final String name;
+            private final LongAdder count = new LongAdder(), errors = new LongAdder();
+            private final LongAdder nanos = new LongAdder(), items = new LongAdder();
+            private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+            private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+            Op(String name) {
+                this.name = name;
+            }
+
+            void record(long start) {
+                record(start, 0);
+            }
+
+            /** Records one call that began at start (from Metrics.start) and handled n records. */
+            void record(long start, long n) {
+                if (ENABLED) add(Math.max(0, System.nanoTime() - start), n);
+            }
+
+            /** Records one call of t nanos whether or not metrics are on; for private Ops like the load test's. */
+            void add(long t, long n) {
+                count.increment();
+                nanos.add(t);
+                items.add(n);
+                max.accumulate(t);
+                histogram.incrementAndGet(bucket(t));
+            }
+
+            void failed() {
+                if (ENABLED) errors.increment();
+            }
+
+            static int bucket(long v) {
+                if (v < 4) return (int) v;
+                int e = 63 - Long.numberOfLeadingZeros(v);
+                return ((e - 1) << 2) | (int) ((v >>> (e - 2)) & 3);
+            }
+
+            static long upperEdge(int bucket) {
+                if (bucket < 4) return bucket;
+                int e = (bucket >> 2) + 1;
+                return ((4L + (bucket & 3) + 1) << (e - 2)) - 1;
+            }
+
+            /** The latency in nanos that a fraction q of the calls stayed within. */
+            long percentile(double q) {
+                long[] h = new long[BUCKETS];
+                long total = 0;
+                for (int i = 0; i < BUCKETS; i++) total += h[i] = histogram.get(i);
+                if (total == 0) return 0;
+                long rank = (long) Math.ceil(q * total), seen = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    seen += h[i];
+                    if (seen >= rank) return Math.min(upperEdge(i), max.get());
+                }
+                return max.get();
+            }
+
+            long count() { return count.sum(); }
+
+            /** Records per second of busy time, for operations that report records. */
+            long itemsPerSecond() {
+                long t = nanos.sum();
+                return t == 0 ? 0 : (long) (items.sum() * 1e9 / t);
+            }
+
+            OpStats stats() {
+                long n = count.sum();
+                return new OpStats(name, n, errors.sum(), n == 0 ? 0 : nanos.sum() / n / 1000, percentile(0.5) / 1000,
+                        percentile(0.99) / 1000, max.get() / 1000, itemsPerSecond());
+            }
+
+            void reset() {
+                count.reset();
+                errors.reset();
+                nanos.reset();
+                items.reset();
+                max.reset();
+                for (int i = 0; i < BUCKETS; i++) histogram.set(i, 0);
+            }
+        }
+
+        /** Registers the MBean once; a failure only costs the JMX view. */
+        static synchronized void register() {
+            if (!ENABLED) return;
+            try {
+                javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+                javax.management.ObjectName name = new javax.management.ObjectName("io.github.ubgadeparth.hms:type=Metrics");
+                if (!server.isRegistered(name)) server.registerMBean(INSTANCE, name);
+            } catch (javax.management.JMException ex) {
+                System.err.println("Metrics MBean not registered: " + ex.getMessage());
+            }
+        }
+
+        /** "search 12× p50 0.3 ms p99 2 ms | save 2× 1.2M rec/s", operations not yet used left out. */
+        static String readout() {
+            StringBuilder sb = new StringBuilder();
+            for (Op op : ALL) {
+                long n = op.count();
+                if (n == 0) continue;
+                if (sb.length() > 0) sb.append(" | ");
+                sb.append(op.name).append(' ').append(n).append("× p50 ").append(millis(op.percentile(0.5)))
+                        .append(" p99 ").append(millis(op.percentile(0.99)));
+                long rate = op.itemsPerSecond();
+                if (rate > 0 && (op == LOAD || op == SAVE)) sb.append(' ').append(rate >= 1_000_000
+                        ? String.format("%.1fM", rate / 1e6) : rate >= 1000 ? (rate / 1000) + "k" : String.valueOf(rate)).append(" rec/s");
+            }
+            return sb.toString();
+        }
+
+        static String millis(long nanos) {
+            return nanos >= 10_000_000 ? nanos / 1_000_000 + " ms" : String.format("%.2f ms", nanos / 1e6);
+        }
+
+        public OpStats[] getOperations() {
+            OpStats[] out = new OpStats[ALL.length];
+            for (int i = 0; i < ALL.length; i++) out[i] = ALL[i].stats();
+            return out;
+        }
+
+        public String getSummary() { return readout(); }
+
+        public void reset() {
+            for (Op op : ALL) op.reset();
+        }
+    }
+
+    /** JMX view of Metrics. Public because the MXBean introspector only reads public interfaces. */
+    public interface MetricsMXBean {
+        OpStats[] getOperations();
+        String getSummary();
+        void reset();
+    }
+
+    /** One operation's numbers; times in microseconds. Shown by JMX clients as a composite. */
+    public static class OpStats {
+        private final String name;
+        private final long count, errors, meanMicros, p50Micros, p99Micros, maxMicros, itemsPerSecond;
+
+        @java.beans.ConstructorProperties({"name", "count", "errors", "meanMicros", "p50Micros", "p99Micros", "maxMicros", "itemsPerSecond"})
+        public OpStats(String name, long count, long errors, long meanMicros, long p50Micros, long p99Micros, long maxMicros, long itemsPerSecond) {
+            this.name = name;
+            this.count = count;
+            this.errors = errors;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+            this.itemsPerSecond = itemsPerSecond;
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getErrors() { return errors; }
+        public long getMeanMicros() { return meanMicros; }
+        public long getP50Micros() { return p50Micros; }
+        public long getP99Micros() { return p99Micros; }
+        public long getMaxMicros() { return maxMicros; }
+        public long getItemsPerSecond() { return itemsPerSecond; }
+    }
+
+    // ---- Front desk ----
+    // The room operations without any Swing in them. The window talks to a FrontDesk,
+    // which is either the local BookingService or a RemoteDesk client of --server mode.
+
+    /** A booking rule the clerk can fix: missing input, unknown room, room in the wrong state. */
+    static class BookingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        enum Kind {
+            MISSING("Missing", 400), INVALID("Error", 400), NOT_FOUND("Error", 404), EXISTS("Error", 409),
+            OCCUPIED("Occupied", 409), VACANT("Info", 409), RESERVED("Reserved", 409), UNAVAILABLE("Error", 503);
+
+            final String title;
+            final int httpStatus;
+
+            Kind(String title, int httpStatus) {
+                this.title = title;
+                this.httpStatus = httpStatus;
+            }
+        }
+
+        final Kind kind;
+
+        BookingException(Kind kind, String message) {
+            super(message);
+            this.kind = kind;
+        }
+    }
+
+    // ---- Change bus ----
+    // Room changes are published here instead of every consumer being called in line.
+    // A dispatcher thread wakes on the first change, lets the rest of the tick (about a
+    // frame) pile up behind it, and hands the whole batch to each subscriber, so a burst
+    // of thousands of changes costs the window one repaint. The bus only feeds views:
+    // the journal is written by the thread making the change, before it is published.
+    // The queue is bounded: a publisher that outruns the subscribers blocks in publish
+    // until the dispatcher has caught up.
+    static class ChangeBus {
+        static final long TICK_MILLIS = 16;
+        private static final int CAPACITY = Integer.getInteger("hms.bus.capacity", 8192);
+        private static final Change STOP = new Change(null, null, 0);
+
+        static class Change {
+            enum Kind { ROOM_ADDED, CHECKED_IN, CHECKED_OUT, LOADED }
+
+            final Kind kind;
+            final Booking room; // detached copy as of the change; null for LOADED
+            final int rooms;    // LOADED only: how many rooms the store now holds
+
+            private Change(Kind kind, Booking room, int rooms) {
+                this.kind = kind;
+                this.room = room;
+                this.rooms = rooms;
+            }
+
+            static Change of(Kind kind, Booking room) { return new Change(kind, room, 0); }
+            static Change loaded(int rooms) { return new Change(Kind.LOADED, null, rooms); }
+        }
+
+        private final BlockingQueue<Change> queue = new java.util.concurrent.ArrayBlockingQueue<>(CAPACITY);
+        private final List<Consumer<List<Change>>> subscribers = new java.util.concurrent.CopyOnWriteArrayList<>();
+        private final Thread dispatcher;
+
+        ChangeBus() {
+            dispatcher = new Thread(this::run, "change-bus");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+
+        /** Subscribers run on the dispatcher thread, in subscription order, and must not block on it. */
+        void subscribe(Consumer<List<Change>> subscriber) {
+            subscribers.add(subscriber);
+        }
+
+        /**
+         * Queues a change, waiting for room if the subscribers are behind. Callers publish
+         * after the store has changed, so an interrupt is kept for later rather than
+         * losing the change.
+         */
+        void publish(Change change) {
+            boolean interrupted = false;
+            while (true) {
+                try { queue.put(change); break; }
+                catch (InterruptedException ex) { interrupted = true; }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        /** Delivers everything already published and stops the dispatcher. */
+        void shutdown() {
+            publish(STOP);
+            try { dispatcher.join(10_000); }
+            catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+        }
+
+        private void run() {
+            List<Change> batch = new ArrayList<>();
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                    if (batch.get(0) != STOP) Thread.sleep(TICK_MILLIS);
+                    queue.drainTo(batch);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                int stop = batch.indexOf(STOP);
+                List<Change> changes = Collections.unmodifiableList(stop < 0 ? batch : batch.subList(0, stop));
+                if (!changes.isEmpty()) {
+                    for (Consumer<List<Change>> s : subscribers) {
+                        try { s.accept(changes); }
+                        catch (RuntimeException ex) { ex.printStackTrace(); }
+                    }
+                }
+                if (stop >= 0) return;
+                batch = new ArrayList<>();
+            }
+        }
+    }
+
+    /** What a full load produced; built off the EDT, applied on it. */
+    static class Loaded {
+        final List<Booking> rows;
+        final List<Reservation> stays;
+        final boolean found;
+        final String summary;
+        final BigDecimal revenueToday;
+        final PricingEngine pricing; // null keeps the rates in use
+
+        Loaded(List<Booking> rows, List<Reservation> stays, boolean found, String summary, BigDecimal revenueToday, PricingEngine pricing) {
+            this.rows = rows;
+            this.stays = stays;
+            this.found = found;
+            this.summary = summary;
+            this.revenueToday = revenueToday;
+            this.pricing = pricing;
+        }
+    }
+
+    interface FrontDesk {
+        /** The rooms to display. Only changed by apply and the mutating calls below. */
+        RoomStore rooms();
+
+        /** Every change to rooms(), in batches, after it happened. */
+        ChangeBus changes();
+
+        /** Reads everything from disk or the server; safe to call off the EDT. */
+        Loaded read() throws IOException;
+
+        void apply(Loaded loaded);
+
+        Booking addRoom(String roomNumber, String roomType, String price);
+
+        Booking checkIn(String roomNumber, String guestName);
+
+        /** The bill if the room checked out at minute `at`; changes nothing. */
+        Folio bill(String roomNumber, RatePolicy policy, long at);
+
+        /** Checks the room out with the bill for minute `at` and returns that bill. */
+        Folio checkOut(String roomNumber, RatePolicy policy, long at);
+
+        Reservation reserve(String roomNumber, String guestName, long from, long to);
+
+        /** What the nights [from, to) in the room would cost under the rate table. */
+        PricingEngine.Quote quote(String roomNumber, long from, long to, RatePolicy policy);
+
+        List<String> freeRooms(String roomType, long from, long to);
+
+        Map<String, List<String>> freeRoomsByType(long from, long to);
+
+        /** Revenue, ADR and occupancy by month and room type for stays that ended in [from, to). */
+        List<StayHistory.ReportRow> report(long from, long to) throws IOException;
+
+        /** Starts a save and returns a line for the status bar. */
+        String save();
+
+        void shutdown();
+    }
+
+    /**
+     * The one place room state changes: store, journal and reservations are updated
+     * together, so the window and the HTTP server share it. Each operation holds the
+     * room's stripe lock (RoomStore.lockFor) for its whole check-then-act, so operations
+     * on one room are linearizable and operations on different rooms run in parallel.
+     */
+    static class BookingService implements FrontDesk {
+        final Path dataFile, journalFile, reservationFile, rateFile;
+        private final RoomStore store = new RoomStore();
+        private final ChangeBus changes = new ChangeBus();
+        private final ReservationCalendar reservations = new ReservationCalendar();
+        private final PersistenceService persistence;
+        private final BookingJournal journal;
+        private final StayHistory history;
+        private volatile PricingEngine pricing = PricingEngine.FLAT;
+        private volatile boolean syncEachChange = true;
+
+        BookingService(Path dataFile, Consumer<String> report, Consumer<IOException> onError) {
+            this.dataFile = dataFile;
+            this.journalFile = dataFile.resolveSibling("bookings.journal");
+            this.reservationFile = dataFile.resolveSibling("reservations.csv");
+            this.rateFile = dataFile.resolveSibling("rates.csv");
+            this.persistence = new PersistenceService(dataFile, report, onError);
+            this.journal = new BookingJournal(journalFile, this::compact, onError);
+            this.history = new StayHistory(dataFile.resolveSibling("history"), onError);
+            persistence.onSaved(journal::compactTo);
+            persistence.onDropped(journal::saveDropped);
+        }
+
+        public RoomStore rooms() { return store; }
+        public ChangeBus changes() { return changes; }
+
+        public Loaded read() throws IOException {
+            boolean found = Files.exists(dataFile) || Files.exists(journalFile);
+            List<Booking> rows = new ArrayList<>();
+            String loaded = "";
+            if (Files.exists(dataFile)) {
+                BulkCsvLoader.Result r = PersistenceService.load(dataFile);
+                rows = r.rows;
+                loaded = " (" + r.summary() + ")";
+            }
+            int replayed = BookingJournal.replay(rows, journalFile);
+            String summary = " from " + dataFile.getFileName() + (replayed > 0 ? " + " + replayed + " journal records" : "") + loaded;
+            long today = Math.floorDiv(Timestamps.now(), 1440) * 1440;
+            BigDecimal revenue = BigDecimal.ZERO;
+            for (StayHistory.ReportRow r : StayHistory.report(history.dir, today, today + 1440, Collections.emptyMap()))
+                revenue = revenue.add(r.total);
+            return new Loaded(rows, ReservationCalendar.read(reservationFile), found, summary, revenue, PricingEngine.read(rateFile));
+        }
+
+        public synchronized void apply(Loaded loaded) {
+            store.clear();
+            for (Booking b : loaded.rows) store.add(b);
+            store.counters().revenueSoFar(Timestamps.now(), loaded.revenueToday);
+            if (loaded.pricing != null) pricing = loaded.pricing;
+            changes.publish(ChangeBus.Change.loaded(store.size()));
+            reservations.clear();
+            for (Reservation r : loaded.stays) {
+                try { reservations.reserve(r.roomNumber, r.guestName, r.from, r.to); }
+                catch (IllegalArgumentException | IllegalStateException ex) { System.err.println("Skipped reservation: " + ex.getMessage()); }
+            }
+        }
+
+        /** Runs the action holding the room's lock for writing. */
+        private <T> T locked(String roomNumber, java.util.function.Supplier<T> action) {
+            StampedLock lock = store.lockFor(roomNumber);
+            long stamp = lock.writeLock();
+            try { return action.get(); }
+            finally { lock.unlockWrite(stamp); }
+        }
+
+        /**
+         * Whether addRoom, checkIn and checkOut return only once their journal record is on
+         * disk (the default). A batch turns this off and calls sync once at the end instead.
+         */
+        void syncEachChange(boolean on) {
+            syncEachChange = on;
+        }
+
+        /** Waits until every change made so far is on disk; never called holding a room's lock. */
+        void sync() {
+            journal.awaitSynced();
+        }
+
+        /** Journals the change, then publishes it to the views; called holding the room's lock. */
+        private void changed(ChangeBus.Change.Kind kind, Booking b) {
+            ChangeBus.Change c = ChangeBus.Change.of(kind, b.copy());
+            journal.record(c);
+            changes.publish(c);
+        }
+
+        public Booking addRoom(String rn, String rt, String pr) {
+            if (rn.isEmpty() || rt.isEmpty() || pr.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Enter room number, type and price.");
+            double price;
+            try { price = Double.parseDouble(pr); }
+            catch (NumberFormatException ex) { throw new BookingException(BookingException.Kind.INVALID, "Invalid price."); }
+            Booking b = new Booking(rn, rt, price);
+            Booking added = locked(rn, () -> {
+                if (!store.addIfAbsent(b))
+                    throw new BookingException(BookingException.Kind.EXISTS, "Room already exists.");
+                changed(ChangeBus.Change.Kind.ROOM_ADDED, b);
+                return b;
+            });
+            if (syncEachChange) sync();
+            return added;
+        }
+
+        public Booking checkIn(String rn, String guest) {
+            if (rn.isEmpty() || guest.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Provide room number and guest name.");
+            Booking checkedIn = locked(rn, () -> {
+                Booking b = store.find(rn);
+                if (b == null)
+                    throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found. Add the room first.");
+                if (b.isOccupied())
+                    throw new BookingException(BookingException.Kind.OCCUPIED, "Room is already occupied by " + b.guestName);
+                long now = Timestamps.now();
+                if (reservations.arrive(b.roomNumber, guest, now)) saveReservations();
+                store.checkIn(b, guest, Timestamps.format(now));
+                changed(ChangeBus.Change.Kind.CHECKED_IN, b);
+                return b;
+            });
+            if (syncEachChange) sync();
+            return checkedIn;
+        }
+
+        private static Booking occupied(Booking b) {
+            if (b == null) throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found.");
+            if (!b.isOccupied()) throw new BookingException(BookingException.Kind.VACANT, "Room is already vacant.");
+            return b;
+        }
+
+        public Folio bill(String rn, RatePolicy policy, long at) {
+            if (rn.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Select a room or enter room number to check out.");
+            return BillingEngine.bill(occupied(find(rn)), at, policy, pricing);
+        }
+
+        public Folio checkOut(String rn, RatePolicy policy, long at) {
+            if (rn.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Select a room or enter room number to check out.");
+            Folio paid = locked(rn, () -> {
+                Booking b = occupied(store.find(rn));
+                Folio folio = BillingEngine.bill(b, at, policy, pricing);
+                store.checkOut(b, folio.checkOut);
+                changed(ChangeBus.Change.Kind.CHECKED_OUT, b);
+                history.record(folio);
+                store.counters().revenue(folio.checkOutMinutes, folio.total);
+                return folio;
+            });
+            if (syncEachChange) sync();
+            return paid;
+        }
+
+        public Reservation reserve(String rn, String guest, long from, long to) {
+            if (rn.isEmpty() || guest.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Provide room number and guest name.");
+            return locked(rn, () -> {
+                Booking b = store.find(rn);
+                if (b == null)
+                    throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found. Add the room first.");
+                long tomorrow = (Math.floorDiv(Timestamps.now(), 1440) + 1) * 1440;
+                if (b.isOccupied() && from < tomorrow)
+                    throw new BookingException(BookingException.Kind.OCCUPIED, "Room is occupied by " + b.guestName + " tonight.");
+                Reservation r;
+                try { r = reservations.reserve(b.roomNumber, guest, from, to); }
+                catch (IllegalArgumentException ex) { throw new BookingException(BookingException.Kind.INVALID, ex.getMessage()); }
+                catch (IllegalStateException ex) { throw new BookingException(BookingException.Kind.RESERVED, ex.getMessage()); }
+                saveReservations();
+                return r;
+            });
+        }
+
+        public PricingEngine.Quote quote(String rn, long from, long to, RatePolicy policy) {
+            if (rn.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Provide a room number.");
+            if (to <= from)
+                throw new BookingException(BookingException.Kind.INVALID, "Departure must be after arrival.");
+            Booking b = find(rn);
+            if (b == null)
+                throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found.");
+            long fromDay = Math.floorDiv(from, 1440);
+            return pricing.quote(b.roomType, b.pricePerNight, fromDay, (int) (Math.floorDiv(to - 1, 1440) + 1 - fromDay), policy);
+        }
+
+        PricingEngine pricing() { return pricing; }
+
+        /** Queues the calendar as it is now; taken under its lock so writes land in change order. */
+        private void saveReservations() {
+            synchronized (reservations) {
+                persistence.writeLater(reservationFile, reservations.toLines());
+            }
+        }
+
+        public List<String> freeRooms(String roomType, long from, long to) {
+            List<String> out = new ArrayList<>();
+            for (Booking b : reservations.freeRooms(store, roomType, from, to)) out.add(b.roomNumber);
+            return out;
+        }
+
+        public Map<String, List<String>> freeRoomsByType(long from, long to) {
+            return reservations.freeRoomsByType(store, from, to);
+        }
+
+        public List<StayHistory.ReportRow> report(long from, long to) throws IOException {
+            Map<String, Integer> rooms = new HashMap<>();
+            for (Booking b : store) rooms.merge(RoomStore.key(b.roomType), 1, Integer::sum);
+            return StayHistory.report(history.dir, from, to, rooms);
+        }
+
+        /** Detached copies for readers; never blocks a check-in. */
+        List<Booking> snapshot() {
+            return store.snapshot();
+        }
+
+        List<Booking> search(String q) {
+            List<Booking> out = new ArrayList<>();
+            for (int id : store.search(q)) out.add(store.copyOf(store.get(id)));
+            return out;
+        }
+
+        Booking find(String rn) {
+            Booking b = store.find(rn);
+            return b == null ? null : store.copyOf(b);
+        }
+
+        /** Vacant rooms per case-folded room type, read from the vacancy index. */
+        Map<String, Integer> vacantByType() {
+            Map<String, Integer> out = new HashMap<>();
+            for (Booking b : store.vacant()) out.merge(RoomStore.key(b.roomType), 1, Integer::sum);
+            return out;
+        }
+
+        public String save() {
+            compact();
+            return "Saving to " + dataFile.toAbsolutePath() + "...";
+        }
+
+        /**
+         * Queues a snapshot for the data file, which also folds the journal once it has
+         * grown past its threshold.
+         */
+        private void compact() {
+            persistence.requestSave(this::frozenSnapshot);
+        }
+
+        /**
+         * Every room and the last journal seq as of one instant. Records are numbered under
+         * the room's lock, so with every lock held the rows include exactly the records up
+         * to the seq and the data file is valid on its own. Check-ins wait for the copy.
+         */
+        PersistenceService.Snapshot frozenSnapshot() {
+            return store.frozen(() -> {
+                List<Booking> rows = new ArrayList<>(store.size());
+                for (Booking b : store) rows.add(b.copy());
+                return new PersistenceService.Snapshot(rows, journal.lastSeq());
+            });
+        }
+
+        public void shutdown() {
+            changes.shutdown(); // hands the views their last batch
+            persistence.shutdown();
+            journal.shutdown();
+            history.shutdown();
+        }
+    }
+
+    // ---- Property chain ----
+    // One BookingService per hotel, each in its own folder under the chain directory
+    // (chain/<property>/bookings.csv with its own journal, reservations and history).
+    // Shards share no state, so they load in parallel, and a cross-property query runs
+    // one fork-join task per shard and merges the results in property order.
+    static class PropertyChain {
+        /** A detached room copy and the property it came from. */
+        static class Located {
+            final String property;
+            final Booking room;
+
+            Located(String property, Booking room) {
+                this.property = property;
+                this.room = room;
+            }
+        }
+
+        final Path root;
+        private final Map<String, BookingService> shards = new java.util.concurrent.ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final Consumer<String> report;
+        private final Consumer<IOException> onError;
+
+        PropertyChain(Path root, Consumer<String> report, Consumer<IOException> onError) {
+            this.root = root;
+            this.report = report;
+            this.onError = onError;
+        }
+
+        /** Opens a shard for every folder under root and loads them all in parallel. Returns the room count. */
+        long load() throws IOException {
+            if (Files.isDirectory(root)) {
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, Files::isDirectory)) {
+                    for (Path d : ds) shards.computeIfAbsent(d.getFileName().toString(), this::open);
+                }
+            }
+            try {
+                return new ArrayList<>(shards.entrySet()).parallelStream().mapToLong(e -> {
+                    BookingService s = e.getValue();
+                    try { s.apply(s.read()); }
+                    catch (IOException ex) { throw new UncheckedIOException(new IOException(e.getKey() + ": " + ex.getMessage(), ex)); }
+                    return s.rooms().size();
+                }).sum();
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private BookingService open(String property) {
+            return new BookingService(root.resolve(property).resolve("bookings.csv"), report, onError);
+        }
+
+        /** The shard for a property, created empty (folder and all, on first save) if it is new. */
+        BookingService property(String name) {
+            if (name.isEmpty() || !name.equals(Paths.get(name).getFileName().toString()))
+                throw new BookingException(BookingException.Kind.INVALID, "Invalid property name: " + name);
+            return shards.computeIfAbsent(name, this::open);
+        }
+
+        Set<String> properties() {
+            return Collections.unmodifiableSet(shards.keySet());
+        }
+
+        long size() {
+            long n = 0;
+            for (BookingService s : shards.values()) n += s.rooms().size();
+            return n;
+        }
+
+        /** Runs the query on every shard in parallel and concatenates the answers in property order. */
+        private <T> List<T> fanOut(java.util.function.BiFunction<String, BookingService, List<T>> query) {
+            return new ArrayList<>(shards.entrySet()).parallelStream()
+                    .flatMap(e -> query.apply(e.getKey(), e.getValue()).stream())
+                    .collect(Collectors.toList());
+        }
+
+        /** Rooms in any property whose number or guest contains q. */
+        List<Located> search(String q) {
+            return fanOut((name, s) -> {
+                List<Located> out = new ArrayList<>();
+                for (Booking b : s.search(q)) out.add(new Located(name, b));
+                return out;
+            });
+        }
+
+        /** Occupied rooms in any property whose guest name contains the given text. */
+        List<Located> findGuest(String guest) {
+            String k = RoomStore.key(guest);
+            return fanOut((name, s) -> {
+                List<Located> out = new ArrayList<>();
+                for (Booking b : s.search(guest))
+                    if (b.isOccupied() && RoomStore.key(b.guestName).contains(k)) out.add(new Located(name, b));
+                return out;
+            });
+        }
+
+        /** Vacant rooms per room type summed over every property. */
+        Map<String, Integer> vacantByType() {
+            return new ArrayList<>(shards.values()).parallelStream()
+                    .flatMap(s -> s.vacantByType().entrySet().stream())
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, Integer::sum, TreeMap::new));
+        }
+
+        void save() {
+            for (BookingService s : shards.values()) s.save();
+        }
+
+        void shutdown() {
+            for (BookingService s : shards.values()) s.shutdown();
+        }
+    }
+
+    // ---- Stress check ----
+    // --stress [rooms] [threads] [seconds]: many threads hammer one BookingService with
+    // adds, check-ins and check-outs on a few hot rooms. Fails if a room is ever held by
+    // two guests, if a snapshot shows a half-applied change, or if the files on disk
+    // reload to a different state than the store ended in.
+    static class StressCheck {
+        static boolean run(int rooms, int threads, long millis, PrintStream out) throws IOException, InterruptedException {
+            Path dir = Files.createTempDirectory("hms-stress");
+            List<String> failures = Collections.synchronizedList(new ArrayList<>());
+            BookingService desk = new BookingService(dir.resolve("bookings.csv"), msg -> {},
+                    ex -> failures.add("write failed: " + ex.getMessage()));
+            java.util.concurrent.atomic.AtomicIntegerArray holders = new java.util.concurrent.atomic.AtomicIntegerArray(rooms);
+            AtomicLong added = new AtomicLong(), checkIns = new AtomicLong(), checkOuts = new AtomicLong();
+            AtomicLong rejected = new AtomicLong(), snapshots = new AtomicLong();
+            AtomicBoolean running = new AtomicBoolean(true);
+            java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+            RatePolicy policy = RatePolicy.DEFAULT;
+
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String guest = "guest-" + t;
+                workers.add(new Thread(() -> {
+                    java.util.concurrent.ThreadLocalRandom rnd = java.util.concurrent.ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                        // every thread races to add every room; exactly one add per room may win
+                        for (int i = 0; i < rooms; i++) {
+                            try { desk.addRoom("R" + i, i % 2 == 0 ? "Single" : "Double", "100"); added.incrementAndGet(); }
+                            catch (BookingException ex) { if (ex.kind != BookingException.Kind.EXISTS) failures.add("add: " + ex.getMessage()); }
+                        }
+                        while (running.get()) {
+                            int i = rnd.nextInt(rooms);
+                            try { desk.checkIn("R" + i, guest); }
+                            catch (BookingException ex) { rejected.incrementAndGet(); continue; }
+                            checkIns.incrementAndGet();
+                            if (holders.incrementAndGet(i) != 1) failures.add("room R" + i + " double-occupied");
+                            Thread.yield();
+                            holders.decrementAndGet(i);
+                            if (!running.get()) break; // leave some rooms occupied for the reload check
+                            desk.checkOut("R" + i, policy, Timestamps.now());
+                            checkOuts.incrementAndGet();
+                        }
+                    } catch (BookingException ex) {
+                        failures.add("checkout by holder: " + ex.getMessage());
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, "stress-" + t));
+            }
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    for (Booking b : desk.snapshot()) {
+                        boolean in = !b.guestName.isEmpty();
+                        if (in == b.checkInDate.isEmpty() || (in && !b.checkOutDate.isEmpty()))
+                            failures.add("torn snapshot of room " + b.roomNumber);
+                    }
+                    snapshots.incrementAndGet();
+                }
+            }, "stress-reader");
+
+            long t0 = System.nanoTime();
+            for (Thread w : workers) w.start();
+            reader.start();
+            start.countDown();
+            Thread.sleep(millis);
+            running.set(false);
+            for (Thread w : workers) w.join();
+            reader.join();
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+
+            List<Booking> end = desk.snapshot();
+            long occupied = end.stream().filter(Booking::isOccupied).count();
+            if (added.get() != rooms) failures.add(added.get() + " adds won for " + rooms + " rooms");
+            if (end.size() != rooms) failures.add(end.size() + " rooms in the store, expected " + rooms);
+            if (desk.rooms().occupied().size() != occupied) failures.add("occupied index out of step with the rooms");
+            if (checkIns.get() - checkOuts.get() != occupied) failures.add(checkIns + " check-ins, " + checkOuts + " check-outs but " + occupied + " occupied");
+            long counted = 0;
+            for (long[] n : desk.rooms().counters().byType().values()) counted += n[1];
+            if (counted != occupied) failures.add("dashboard counts " + counted + " occupied, the store has " + occupied);
+
+            desk.save();
+            desk.shutdown();
+            Map<String, String> reloaded = new HashMap<>();
+            for (Booking b : loadHeadless(desk.dataFile, desk.journalFile)) reloaded.put(b.roomNumber, b.toCSV());
+            for (Booking b : end)
+                if (!b.toCSV().equals(reloaded.get(b.roomNumber))) failures.add("room " + b.roomNumber + " reloads as " + reloaded.get(b.roomNumber));
+
+            out.printf("%d threads, %d rooms, %d ms: %d check-ins, %d check-outs, %d rejected, %d snapshots, %d left occupied%n",
+                    threads, rooms, ms, checkIns.get(), checkOuts.get(), rejected.get(), snapshots.get(), occupied);
+            synchronized (failures) {
+                for (String f : failures.subList(0, Math.min(20, failures.size()))) out.println("FAIL " + f);
+            }
+            out.println(failures.isEmpty() ? "OK" : failures.size() + " failures");
+            return failures.isEmpty();
+        }
+    }
+
+    // ---- Load test ----
+    // --loadtest [key=value ...]: generates synthetic properties in a scratch directory,
+    // drives a weighted mix of operations at them from many threads and prints sustained
+    // throughput, latency percentiles per operation and heap/GC figures. Options:
+    //
+    //   properties=1 rooms=20000 occupancy=60 threads=<2 x cores> warmup=5 seconds=30
+    //   types=Single:40,Double:35,Deluxe:18,Suite:7
+    //   mix=add:20,checkin:300,checkout:280,search:390,save:8,load:2
+    //   dir=<path>   keep the generated files there instead of in a temp directory
+    //
+    // Rejections (checking in to an occupied room and the like) are expected and counted
+    // apart; any other exception fails the run. Guest names include commas, quotes, line
+    // breaks and accented letters so the CSV and journal paths see the awkward cases.
+    static class LoadTest {
+        enum Kind { ADD, CHECKIN, CHECKOUT, SEARCH, SAVE, LOAD }
+
+        private static final String[] FIRST = {"Anna", "Ben", "Chloé", "Dmitri", "Emma", "Farah", "Giovanni", "Hana", "Ivan",
+                "Jane", "Kofi", "Lena", "Mateo", "Nadia", "Omar", "Priya", "Quinn", "Rosa", "Sven", "Tomás", "Yuki", "Zoë"};
+        private static final String[] LAST = {"Smith", "García", "Müller", "Nguyen", "O'Brien", "Kowalski", "Okafor", "Rossi",
+                "Tanaka", "Ivanova", "Dubois", "Andersson", "Haddad", "Silva", "Kim", "Novak"};
+        private static final Map<String, Integer> PRICES = Map.of("single", 90, "double", 130, "deluxe", 210, "suite", 380);
+
+        private static class Property {
+            final BookingService desk;
+            final java.util.concurrent.atomic.AtomicInteger rooms; // indexes [0, rooms) are added or being added
+
+            Property(BookingService desk, int rooms) {
+                this.desk = desk;
+                this.rooms = new java.util.concurrent.atomic.AtomicInteger(rooms);
+            }
+        }
+
+        final int properties, rooms, occupancy, threads;
+        final long warmupMillis, millis;
+        final String[] types;
+        final int[] typeWeights, mixWeights;
+        final Path dir;
+        private final Metrics.Op[] ops = new Metrics.Op[Kind.values().length];
+        private final LongAdder[] rejected = new LongAdder[Kind.values().length];
+        private final LongAdder done = new LongAdder();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        /** Reads key=value options; throws IllegalArgumentException naming the bad one. */
+        LoadTest(Map<String, String> o) throws IOException {
+            Set<String> known = new HashSet<>(Arrays.asList("properties", "rooms", "occupancy", "threads", "warmup", "seconds", "types", "mix", "dir"));
+            for (String k : o.keySet()) if (!known.contains(k)) throw new IllegalArgumentException("unknown option " + k);
+            properties = number(o, "properties", 1, 1);
+            rooms = number(o, "rooms", 20_000, 0);
+            occupancy = Math.min(100, number(o, "occupancy", 60, 0));
+            threads = number(o, "threads", 2 * Runtime.getRuntime().availableProcessors(), 1);
+            warmupMillis = number(o, "warmup", 5, 0) * 1000L;
+            millis = number(o, "seconds", 30, 1) * 1000L;
+            Map<String, Integer> t = weights(o.getOrDefault("types", "Single:40,Double:35,Deluxe:18,Suite:7"), false);
+            types = t.keySet().toArray(new String[0]);
+            typeWeights = cumulative(t.values());
+            Map<String, Integer> m = weights(o.getOrDefault("mix", "add:20,checkin:300,checkout:280,search:390,save:8,load:2"), true);
+            int[] w = new int[Kind.values().length];
+            m.forEach((k, v) -> w[Kind.valueOf(k.toUpperCase(Locale.ROOT)).ordinal()] = v);
+            mixWeights = cumulative(Arrays.stream(w).boxed().collect(Collectors.toList()));
+            dir = o.containsKey("dir") ? Files.createDirectories(Paths.get(o.get("dir"))) : Files.createTempDirectory("hms-load");
+            for (Kind k : Kind.values()) {
+                ops[k.ordinal()] = new Metrics.Op(k.name().toLowerCase(Locale.ROOT));
+                rejected[k.ordinal()] = new LongAdder();
+            }
+        }
+
+        private static int number(Map<String, String> o, String key, int dflt, int min) {
+            if (!o.containsKey(key)) return dflt;
+            int v;
+            try { v = Integer.parseInt(o.get(key)); }
+            catch (NumberFormatException ex) { throw new IllegalArgumentException(key + " must be a number"); }
+            if (v < min) throw new IllegalArgumentException(key + " must be at least " + min);
+            return v;
+        }
+
+        /** "a:3,b:1" in order; with kinds, every name must be one of them. */
+        private static Map<String, Integer> weights(String spec, boolean kinds) {
+            Map<String, Integer> out = new LinkedHashMap<>();
+            for (String part : spec.split(",")) {
+                String[] kv = part.split(":");
+                String name = kv[0].trim();
+                try {
+                    if (kinds) Kind.valueOf(name.toUpperCase(Locale.ROOT));
+                    int w = kv.length == 2 ? Integer.parseInt(kv[1].trim()) : -1;
+                    if (name.isEmpty() || w < 0) throw new IllegalArgumentException();
+                    out.put(name, w);
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("bad weight \"" + part + "\" in " + spec);
+                }
+            }
+            if (out.values().stream().mapToInt(Integer::intValue).sum() == 0) throw new IllegalArgumentException("all weights are 0 in " + spec);
+            return out;
+        }
+
+        private static int[] cumulative(Collection<Integer> weights) {
+            int[] out = new int[weights.size()];
+            int sum = 0, i = 0;
+            for (int w : weights) out[i++] = sum += w;
+            return out;
+        }
+
+        private static int pick(int[] cumulative, java.util.Random rnd) {
+            int r = rnd.nextInt(cumulative[cumulative.length - 1]);
+            int i = 0;
+            while (cumulative[i] <= r) i++;
+            return i;
+        }
+
+        /** Generated rooms are numbered by floor, 101..199, 201..; rooms added during the run are N<index>. */
+        String room(int i) {
+            return i < rooms ? String.valueOf((i / 100 + 1) * 100 + i % 100) : "N" + i;
+        }
+
+        String type(java.util.Random rnd) {
+            return types[pick(typeWeights, rnd)];
+        }
+
+        static String price(String type, java.util.Random rnd) {
+            int base = PRICES.getOrDefault(RoomStore.key(type), 150);
+            return String.valueOf(base + rnd.nextInt(base / 5 + 1) - base / 10);
+        }
+
+        /** A guest name; about one in fifteen needs quoting in CSV. */
+        static String guest(java.util.Random rnd) {
+            String first = FIRST[rnd.nextInt(FIRST.length)], last = LAST[rnd.nextInt(LAST.length)];
+            switch (rnd.nextInt(60)) {
+                case 0: return last + ", " + first;
+                case 1: return first + " \"" + FIRST[rnd.nextInt(FIRST.length)] + "\" " + last;
+                case 2: return first + " " + last + ", Jr.";
+                case 3: return first + " " + last + "\nc/o " + LAST[rnd.nextInt(LAST.length)];
+                default: return first + " " + last;
+            }
+        }
+
+        /** Writes one data file per property and loads them; returns the open properties. */
+        private List<Property> generate(PrintStream out) throws IOException {
+            java.util.Random rnd = new java.util.Random(42);
+            long now = Timestamps.now(), bytes = 0, t0 = System.nanoTime();
+            List<Path> files = new ArrayList<>();
+            for (int p = 0; p < properties; p++) {
+                List<Booking> rows = new ArrayList<>(rooms);
+                for (int i = 0; i < rooms; i++) {
+                    String type = type(rnd);
+                    Booking b = new Booking(room(i), type, Double.parseDouble(price(type, rnd)));
+                    if (rnd.nextInt(100) < occupancy) {
+                        b.guestName = guest(rnd);
+                        b.checkInDate = Timestamps.format(now - 1440 - rnd.nextInt(6 * 1440));
+                    }
+                    rows.add(b);
+                }
+                Path file = dir.resolve("property-" + (p + 1)).resolve("bookings.csv");
+                Files.createDirectories(file.getParent());
+                Files.deleteIfExists(file.resolveSibling("bookings.journal"));
+                bytes += PersistenceService.write(file, rows, null);
+                files.add(file);
+            }
+            long generated = System.nanoTime();
+            List<Property> opened = new ArrayList<>();
+            for (Path file : files) {
+                BookingService desk = new BookingService(file, msg -> {}, ex -> failures.add("write failed: " + ex.getMessage()));
+                desk.apply(desk.read());
+                opened.add(new Property(desk, rooms));
+            }
+            out.printf("Generated %d properties x %d rooms (%d KB) in %d ms, loaded in %d ms, under %s%n", properties, rooms, bytes / 1024,
+                    (generated - t0) / 1_000_000, (System.nanoTime() - generated) / 1_000_000, dir);
+            return opened;
+        }
+
+        private void step(Property p, Kind kind, java.util.concurrent.ThreadLocalRandom rnd, RatePolicy policy) {
+            long start = System.nanoTime();
+            try {
+                int n = p.rooms.get();
+                switch (kind) {
+                    case ADD: {
+                        String type = type(rnd);
+                        p.desk.addRoom(room(p.rooms.getAndIncrement()), type, price(type, rnd));
+                        break;
+                    }
+                    case CHECKIN:
+                        if (n > 0) p.desk.checkIn(room(rnd.nextInt(n)), guest(rnd));
+                        break;
+                    case CHECKOUT:
+                        if (n > 0) p.desk.checkOut(room(rnd.nextInt(n)), policy, Timestamps.now());
+                        break;
+                    case SEARCH:
+                        p.desk.rooms().search(rnd.nextBoolean() ? LAST[rnd.nextInt(LAST.length)] : room(rnd.nextInt(Math.max(1, n))).substring(0, 2));
+                        break;
+                    case SAVE:
+                        p.desk.save();
+                        break;
+                    case LOAD:
+                        p.desk.read();
+                        break;
+                }
+            } catch (BookingException ex) {
+                rejected[kind.ordinal()].increment();
+            } catch (IOException | RuntimeException ex) {
+                failures.add(kind + ": " + ex);
+            }
+            ops[kind.ordinal()].add(System.nanoTime() - start, 0);
+            done.increment();
+        }
+
+        boolean run(PrintStream out) throws IOException, InterruptedException {
+            List<Property> props = generate(out);
+            AtomicBoolean running = new AtomicBoolean(true);
+            RatePolicy policy = RatePolicy.DEFAULT;
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(new Thread(() -> {
+                    java.util.concurrent.ThreadLocalRandom rnd = java.util.concurrent.ThreadLocalRandom.current();
+                    while (running.get()) step(props.get(rnd.nextInt(props.size())), Kind.values()[pick(mixWeights, rnd)], rnd, policy);
+                }, "load-" + t));
+            }
+            for (Thread w : workers) w.start();
+            if (warmupMillis > 0) {
+                out.printf("Warming up for %d s...%n", warmupMillis / 1000);
+                Thread.sleep(warmupMillis);
+            }
+            for (Metrics.Op op : ops) op.reset();
+            for (LongAdder r : rejected) r.reset();
+            done.reset();
+            for (java.lang.management.MemoryPoolMXBean pool : java.lang.management.ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+            long gcCount0 = gcCount(), gcMillis0 = gcMillis();
+
+            // sample once a second so a stall shows up as a slow window, not just a lower average
+            long t0 = System.nanoTime(), last = 0, minRate = Long.MAX_VALUE, maxRate = 0;
+            for (long elapsed = 0; elapsed < millis; ) {
+                Thread.sleep(Math.min(1000, millis - elapsed));
+                long now = (System.nanoTime() - t0) / 1_000_000, total = done.sum();
+                long rate = (total - last) * 1000 / Math.max(1, now - elapsed);
+                minRate = Math.min(minRate, rate);
+                maxRate = Math.max(maxRate, rate);
+                if (now / 5000 != elapsed / 5000)
+                    out.printf("  %3d s  %,9d ops/s  heap %,d MB%n", now / 1000, rate, heapUsed() >> 20);
+                last = total;
+                elapsed = now;
+            }
+            running.set(false);
+            for (Thread w : workers) w.join();
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            long total = done.sum(), gcCount = gcCount() - gcCount0, gcMillis = gcMillis() - gcMillis0;
+
+            int added = 0;
+            for (Property p : props) added += p.rooms.get() - rooms;
+            out.printf("%d threads, %d properties, %d rooms (+%d added), %d ms measured%n", threads, properties, properties * rooms, added, ms);
+            out.printf("Throughput: %,d ops/s sustained (1 s windows: min %,d, max %,d)%n", total * 1000 / Math.max(1, ms), minRate, maxRate);
+            out.printf("%-9s %10s %9s %10s %9s %9s %9s %9s%n", "op", "count", "rejected", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+            for (Kind k : Kind.values()) {
+                Metrics.Op op = ops[k.ordinal()];
+                if (op.count() == 0) continue;
+                out.printf("%-9s %,10d %,9d %,10d %9.3f %9.3f %9.3f %9.3f%n", op.name, op.count(), rejected[k.ordinal()].sum(),
+                        op.count() * 1000 / Math.max(1, ms), op.percentile(0.5) / 1e6, op.percentile(0.99) / 1e6,
+                        op.percentile(0.999) / 1e6, op.percentile(1) / 1e6);
+            }
+            out.printf("Heap: %,d MB used, %,d MB peak, %,d MB max | GC: %d collections, %d ms (%.1f%% of the run)%n",
+                    heapUsed() >> 20, heapPeak() >> 20, Runtime.getRuntime().maxMemory() >> 20, gcCount, gcMillis, 100.0 * gcMillis / Math.max(1, ms));
+            if (!props.isEmpty() && props.get(0).desk.pricing().size() > 0) out.println("Pricing: " + props.get(0).desk.pricing().stats());
+
+            for (Property p : props) p.desk.shutdown();
+            synchronized (failures) {
+                for (String f : failures.subList(0, Math.min(20, failures.size()))) out.println("FAIL " + f);
+            }
+            out.println(failures.isEmpty() ? "OK" : failures.size() + " failures");
+            return failures.isEmpty();
+        }
+
+        private static long heapUsed() {
+            return java.lang.management.ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+
+        private static long heapPeak() {
+            long peak = 0;
+            for (java.lang.management.MemoryPoolMXBean pool : java.lang.management.ManagementFactory.getMemoryPoolMXBeans())
+                if (pool.getType() == java.lang.management.MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+            return peak;
+        }
+
+        private static long gcCount() {
+            long n = 0;
+            for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans())
+                n += Math.max(0, gc.getCollectionCount());
+            return n;
+        }
+
+        private static long gcMillis() {
+            long n = 0;
+            for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans())
+                n += Math.max(0, gc.getCollectionTime());
+            return n;
+        }
+    }
+
+    // ---- Batch mode ----
+    // --batch <commands> [--dry-run]: applies a file of commands to the data file without
+    // the window, one per line; a '#' outside quotes starts a comment, on its own line or
+    // after a command:
+    //
+    //   add,<room>,<type>,<price>
+    //   checkin,<room>,<guest>
+    //   checkout,<room>[,<tax %>,<discount %>]     empty percentages count as 0
+    //
+    // A first pass parses every line and replays the room states in a map, so duplicates,
+    // unknown rooms and wrong states are reported per line before anything changes. The
+    // rest go through the desk like clicks would (journal records are group committed),
+    // and one snapshot is saved at the end. -Dhms.store=columnar runs the file on a
+    // ColumnarDesk instead of the BookingService.
+    static class BatchRunner {
+        /** What a batch needs from a desk; failures are BookingExceptions, as from the BookingService. */
+        interface Desk {
+            /** Whether the room is occupied, or null if there is no such room. */
+            Boolean occupied(String roomNumber);
+            void addRoom(String roomNumber, String roomType, String price);
+            void checkIn(String roomNumber, String guestName);
+            void checkOut(String roomNumber, RatePolicy policy, long at);
+            void syncEachChange(boolean on);
+            void sync();
+            void save();
+        }
+
+        static Desk of(BookingService desk) {
+            return new Desk() {
+                public Boolean occupied(String roomNumber) {
+                    Booking b = desk.rooms().find(roomNumber);
+                    return b == null ? null : b.isOccupied();
+                }
+                public void addRoom(String roomNumber, String roomType, String price) { desk.addRoom(roomNumber, roomType, price); }
+                public void checkIn(String roomNumber, String guestName) { desk.checkIn(roomNumber, guestName); }
+                public void checkOut(String roomNumber, RatePolicy policy, long at) { desk.checkOut(roomNumber, policy, at); }
+                public void syncEachChange(boolean on) { desk.syncEachChange(on); }
+                public void sync() { desk.sync(); }
+                public void save() { desk.save(); }
+            };
+        }
+
+        private static class Command {
+            final int line;
+            final String[] f;
+            RatePolicy policy = RatePolicy.DEFAULT; // checkout only, set by check
+
+            Command(int line, String[] f) {
+                this.line = line;
+                this.f = f;
+            }
+
+            String op() { return f[0].trim().toLowerCase(Locale.ROOT); }
+            String arg(int i) { return i < f.length ? f[i].trim() : ""; }
+        }
+
+        /** Returns the number of rejected commands; prints them and a summary to out. */
+        static int run(BookingService desk, Path commands, boolean dryRun, PrintStream out) throws IOException {
+            return run(of(desk), commands, dryRun, out);
+        }
+
+        static int run(Desk desk, Path commands, boolean dryRun, PrintStream out) throws IOException {
+            long t0 = System.nanoTime();
+            List<Command> valid = new ArrayList<>();
+            List<String> errors = new ArrayList<>();
+            int total = 0;
+
+            // pass 1: syntax, duplicates and room state, against the store plus earlier lines
+            Map<String, Boolean> occupied = new HashMap<>(); // room key -> occupied, for rooms touched by the file
+            try (BufferedReader r = Files.newBufferedReader(commands, StandardCharsets.UTF_8)) {
+                String text;
+                int n = 0;
+                while ((text = r.readLine()) != null) {
+                    n++;
+                    String line = stripComment(text).trim();
+                    if (line.isEmpty()) continue;
+                    total++;
+                    Command c = new Command(n, parseCSVLine(line));
+                    String err = check(c, desk, occupied);
+                    if (err != null) errors.add("line " + n + ": " + err);
+                    else valid.add(c);
+                }
+            }
+            long checked = System.nanoTime();
+
+            // pass 2: apply, waiting for the journal once for the whole file instead of once per line
+            int applied = 0;
+            if (!dryRun) {
+                desk.syncEachChange(false);
+                for (Command c : valid) {
+                    try {
+                        switch (c.op()) {
+                            case "add": desk.addRoom(c.arg(1), c.arg(2), c.arg(3)); break;
+                            case "checkin": desk.checkIn(c.arg(1), c.arg(2)); break;
+                            default: desk.checkOut(c.arg(1), c.policy, Timestamps.now());
+                        }
+                        applied++;
+                    } catch (BookingException ex) { // e.g. a reservation for someone else tonight
+                        errors.add("line " + c.line + ": " + ex.getMessage());
+                    }
+                }
+                desk.syncEachChange(true);
+                if (applied > 0) {
+                    try { desk.sync(); }
+                    catch (BookingException ex) { errors.add(ex.getMessage()); }
+                    desk.save();
+                }
+            }
+            long done = System.nanoTime();
+
+            for (String e : errors.subList(0, Math.min(errors.size(), 100))) out.println(e);
+            if (errors.size() > 100) out.println("... " + (errors.size() - 100) + " more");
+            long ms = Math.max(1, (done - t0) / 1_000_000);
+            if (dryRun) out.printf("%d commands: %d valid, %d rejected (dry run). Validated in %d ms, %d ops/s%n",
+                    total, valid.size(), errors.size(), ms, total * 1000L / ms);
+            else out.printf("%d commands: %d applied, %d rejected. Validated in %d ms, applied and saved in %d ms, %d ops/s%n",
+                    total, applied, errors.size(), (checked - t0) / 1_000_000, (done - checked) / 1_000_000, total * 1000L / ms);
+            return errors.size();
+        }
+
+        /** Why the command cannot apply, or null; records its effect in occupied when it can. */
+        private static String check(Command c, Desk desk, Map<String, Boolean> occupied) {
+            String room = c.arg(1), key = RoomStore.key(room);
+            if (room.isEmpty()) return "missing room number";
+            Boolean state = occupied.get(key);
+            if (state == null) state = desk.occupied(room);
+            switch (c.op()) {
+                case "add":
+                    if (c.arg(2).isEmpty() || c.arg(3).isEmpty()) return "add needs room, type and price";
+                    try { Double.parseDouble(c.arg(3)); } catch (NumberFormatException ex) { return "invalid price \"" + c.arg(3) + "\""; }
+                    if (state != null) return "room " + room + " already exists";
+                    occupied.put(key, false);
+                    return null;
+                case "checkin":
+                    if (c.arg(2).isEmpty()) return "checkin needs room and guest";
+                    if (state == null) return "room " + room + " not found";
+                    if (state) return "room " + room + " is already occupied";
+                    occupied.put(key, true);
+                    return null;
+                case "checkout":
+                    if (c.f.length > 2) {
+                        BigDecimal tax = percent(c.arg(2)), discount = percent(c.arg(3));
+                        if (tax == null) return "invalid tax % \"" + c.arg(2) + "\"";
+                        if (discount == null) return "invalid discount % \"" + c.arg(3) + "\"";
+                        c.policy = new RatePolicy(tax, discount);
+                    }
+                    if (state == null) return "room " + room + " not found";
+                    if (!state) return "room " + room + " is already vacant";
+                    occupied.put(key, false);
+                    return null;
+                default:
+                    return "unknown command \"" + c.arg(0) + "\"";
+            }
+        }
+
+        /** An optional percentage: "" is 0, anything else must be a number. */
+        private static BigDecimal percent(String s) {
+            if (s.isEmpty()) return BigDecimal.ZERO;
+            try { return new BigDecimal(s); }
+            catch (NumberFormatException ex) { return null; }
+        }
+
+        /** The line up to the first '#' that is not inside a quoted field. */
+        static String stripComment(String line) {
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char ch = line.charAt(i);
+                if (ch == '"') quoted = !quoted;
+                else if (ch == '#' && !quoted) return line.substring(0, i);
+            }
+            return line;
+        }
+    }
+
+    // ---- Columnar desk ----
+    // A headless desk on the ColumnarBookingStore, for batch runs on properties where one
+    // Booking object per room costs too much heap (--batch with -Dhms.store=columnar). It
+    // keeps the BookingService's files and rules: changes are journaled and on disk before
+    // a call returns, reservations hold rooms for tonight, checkouts are billed from the
+    // rate table and written to the stay history, and the data file is a snapshot that
+    // folds the journal. There are no views. One thread at a time, like the store.
+    static class ColumnarDesk implements BatchRunner.Desk {
+        final Path dataFile, journalFile, reservationFile;
+        private final ColumnarBookingStore store;
+        private final ReservationCalendar reservations = new ReservationCalendar();
+        private final PricingEngine pricing;
+        private final PersistenceService persistence;
+        private final BookingJournal journal;
+        private final StayHistory history;
+        private volatile boolean compactDue; // set by the journal writer, saved by the next change
+        private boolean syncEachChange = true;
+
+        ColumnarDesk(Path dataFile, Consumer<String> report, Consumer<IOException> onError) throws IOException {
+            this.dataFile = dataFile;
+            this.journalFile = dataFile.resolveSibling("bookings.journal");
+            this.reservationFile = dataFile.resolveSibling("reservations.csv");
+            this.store = ColumnarBookingStore.of(loadHeadless(dataFile, journalFile));
+            for (Reservation r : ReservationCalendar.read(reservationFile)) {
+                try { reservations.reserve(r.roomNumber, r.guestName, r.from, r.to); }
+                catch (IllegalArgumentException | IllegalStateException ex) { System.err.println("Skipped reservation: " + ex.getMessage()); }
+            }
+            this.pricing = PricingEngine.read(dataFile.resolveSibling("rates.csv"));
+            this.persistence = new PersistenceService(dataFile, report, onError);
+            // the store is not thread-safe, so the writer only asks and the caller's thread takes the snapshot
+            this.journal = new BookingJournal(journalFile, () -> compactDue = true, onError);
+            this.history = new StayHistory(dataFile.resolveSibling("history"), onError);
+            persistence.onSaved(journal::compactTo);
+            persistence.onDropped(journal::saveDropped);
+        }
+
+        int size() { return store.size(); }
+
+        /** A detached copy of the room, or null. */
+        Booking find(String roomNumber) {
+            int r = store.find(roomNumber);
+            return r < 0 ? null : store.toBooking(r);
+        }
+
+        /** Rooms whose number or guest contains q, in store order. */
+        List<Booking> search(String q) {
+            List<Booking> out = new ArrayList<>();
+            for (int r : store.search(q)) out.add(store.toBooking(r));
+            return out;
+        }
+
+        public Boolean occupied(String roomNumber) {
+            int r = store.find(roomNumber);
+            return r < 0 ? null : store.isOccupied(r);
+        }
+
+        public void addRoom(String rn, String rt, String pr) {
+            if (rn.isEmpty() || rt.isEmpty() || pr.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Enter room number, type and price.");
+            double price;
+            try { price = Double.parseDouble(pr); }
+            catch (NumberFormatException ex) { throw new BookingException(BookingException.Kind.INVALID, "Invalid price."); }
+            int r = store.addRoom(rn, rt, price);
+            if (r < 0) throw new BookingException(BookingException.Kind.EXISTS, "Room already exists.");
+            changed(ChangeBus.Change.Kind.ROOM_ADDED, r);
+        }
+
+        public void checkIn(String rn, String guest) {
+            if (rn.isEmpty() || guest.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Provide room number and guest name.");
+            int r = store.find(rn);
+            if (r < 0) throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found. Add the room first.");
+            if (store.isOccupied(r))
+                throw new BookingException(BookingException.Kind.OCCUPIED, "Room is already occupied by " + store.guestName(r));
+            long now = Timestamps.now();
+            if (reservations.arrive(store.roomNumber(r), guest, now)) persistence.writeLater(reservationFile, reservations.toLines());
+            store.checkIn(r, guest, now);
+            changed(ChangeBus.Change.Kind.CHECKED_IN, r);
+        }
+
+        public void checkOut(String rn, RatePolicy policy, long at) {
+            if (rn.isEmpty())
+                throw new BookingException(BookingException.Kind.MISSING, "Select a room or enter room number to check out.");
+            int r = store.find(rn);
+            if (r < 0) throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found.");
+            if (!store.isOccupied(r)) throw new BookingException(BookingException.Kind.VACANT, "Room is already vacant.");
+            Folio folio = BillingEngine.bill(store.toBooking(r), at, policy, pricing);
+            store.checkOut(r, folio.checkOutMinutes);
+            history.record(folio);
+            changed(ChangeBus.Change.Kind.CHECKED_OUT, r);
+        }
+
+        private void changed(ChangeBus.Change.Kind kind, int r) {
+            journal.record(ChangeBus.Change.of(kind, store.toBooking(r)));
+            if (compactDue) save();
+            if (syncEachChange) sync();
+        }
+
+        public void syncEachChange(boolean on) {
+            syncEachChange = on;
+        }
+
+        public void sync() {
+            journal.awaitSynced();
+        }
+
+        /** Queues a snapshot taken now, on the caller's thread, between changes. */
+        public void save() {
+            compactDue = false;
+            PersistenceService.Snapshot snap = new PersistenceService.Snapshot(store.toBookings(), journal.lastSeq());
+            persistence.requestSave(() -> snap);
+        }
+
+        public void shutdown() {
+            persistence.shutdown();
+            journal.shutdown();
+            history.shutdown();
+        }
+    }
+
+    // ---- JSON ----
+    // Just enough JSON for the HTTP mode: objects, arrays, strings, numbers, booleans, null.
+    // Numbers come back as BigDecimal so prices and totals stay exact.
+    static class Json {
+        private final String s;
+        private int i;
+
+        private Json(String s) {
+            this.s = s;
+        }
+
+        static Object parse(String text) {
+            Json p = new Json(text);
+            Object v = p.value();
+            p.ws();
+            if (p.i != p.s.length()) throw p.error();
+            return v;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Map<String, Object> object(String text) {
+            Object v = parse(text.isEmpty() ? "{}" : text);
+            if (!(v instanceof Map)) throw new IllegalArgumentException("Expected a JSON object");
+            return (Map<String, Object>) v;
+        }
+
+        /** A field as text: "" when missing or null, numbers in plain notation. */
+        static String text(Map<String, Object> o, String key) {
+            Object v = o.get(key);
+            if (v == null) return "";
+            return v instanceof BigDecimal ? ((BigDecimal) v).toPlainString() : v.toString();
+        }
+
+        static String str(String v) {
+            if (v == null) return "null";
+            StringBuilder sb = new StringBuilder(v.length() + 2).append('"');
+            for (int k = 0; k < v.length(); k++) {
+                char c = v.charAt(k);
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    default:
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+
+        private Object value() {
+            ws();
+            if (i >= s.length()) throw error();
+            char c = s.charAt(i);
+            switch (c) {
+                case '{': {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    i++;
+                    ws();
+                    if (peek('}')) return m;
+                    do {
+                        ws();
+                        String k = string();
+                        ws();
+                        expect(':');
+                        m.put(k, value());
+                        ws();
+                    } while (peek(','));
+                    expect('}');
+                    return m;
+                }
+                case '[': {
+                    List<Object> l = new ArrayList<>();
+                    i++;
+                    ws();
+                    if (peek(']')) return l;
+                    do { l.add(value()); ws(); } while (peek(','));
+                    expect(']');
+                    return l;
+                }
+                case '"': return string();
+                case 't': word("true"); return Boolean.TRUE;
+                case 'f': word("false"); return Boolean.FALSE;
+                case 'n': word("null"); return null;
+                default: {
+                    int start = i;
+                    while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+                    try { return new BigDecimal(s.substring(start, i)); }
+                    catch (NumberFormatException ex) { throw error(); }
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (i < s.length()) {
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                if (i >= s.length()) break;
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (i + 4 > s.length()) throw error();
+                        sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default: sb.append(e);
+                }
+            }
+            throw error();
+        }
+
+        private void ws() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+
+        private boolean peek(char c) {
+            if (i < s.length() && s.charAt(i) == c) { i++; return true; }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) throw error();
+        }
+
+        private void word(String w) {
+            if (!s.startsWith(w, i)) throw error();
+            i += w.length();
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Malformed JSON at offset " + i);
+        }
+
+        static String room(Booking b) {
+            return "{\"roomNumber\":" + str(b.roomNumber) + ",\"roomType\":" + str(b.roomType)
+                    + ",\"price\":" + BigDecimal.valueOf(b.pricePerNight).toPlainString()
+                    + ",\"guestName\":" + str(b.guestName) + ",\"checkIn\":" + str(b.checkInDate)
+                    + ",\"checkOut\":" + str(b.checkOutDate) + ",\"occupied\":" + b.isOccupied() + "}";
+        }
+
+        static Booking room(Map<String, Object> o) {
+            double price;
+            try { price = Double.parseDouble(text(o, "price")); } catch (NumberFormatException ex) { price = 0; }
+            Booking b = new Booking(text(o, "roomNumber"), text(o, "roomType"), price);
+            b.guestName = text(o, "guestName");
+            b.checkInDate = text(o, "checkIn");
+            b.checkOutDate = text(o, "checkOut");
+            return b;
+        }
+
+        static String folio(Folio f) {
+            return "{\"roomNumber\":" + str(f.roomNumber) + ",\"roomType\":" + str(f.roomType)
+                    + ",\"guestName\":" + str(f.guestName) + ",\"checkIn\":" + str(f.checkIn)
+                    + ",\"checkOut\":" + str(f.checkOut) + ",\"at\":" + f.checkOutMinutes + ",\"nights\":" + f.nights
+                    + ",\"pricePerNight\":" + Folio.plain(f.pricePerNight) + ",\"rates\":" + rates(f.quote)
+                    + ",\"subtotal\":" + Folio.plain(f.subtotal)
+                    + ",\"discountPercent\":" + Folio.plain(f.policy.discountPercent) + ",\"discount\":" + Folio.plain(f.discount)
+                    + ",\"taxable\":" + Folio.plain(f.taxable) + ",\"taxPercent\":" + Folio.plain(f.policy.taxPercent)
+                    + ",\"tax\":" + Folio.plain(f.tax) + ",\"total\":" + Folio.plain(f.total) + "}";
+        }
+
+        static String quote(PricingEngine.Quote q) {
+            return "{\"roomType\":" + str(q.roomType) + ",\"from\":" + str(Timestamps.format(q.fromDay * 1440).substring(0, 10))
+                    + ",\"nights\":" + q.nights + ",\"rates\":" + rates(q) + ",\"subtotal\":" + Folio.plain(q.subtotal)
+                    + ",\"discountPercent\":" + Folio.plain(q.policy.discountPercent) + ",\"discount\":" + Folio.plain(q.discount)
+                    + ",\"taxable\":" + Folio.plain(q.taxable) + ",\"taxPercent\":" + Folio.plain(q.policy.taxPercent)
+                    + ",\"tax\":" + Folio.plain(q.tax) + ",\"total\":" + Folio.plain(q.total) + "}";
+        }
+
+        static PricingEngine.Quote quote(Map<String, Object> o, RatePolicy policy) {
+            long from = Timestamps.parse(text(o, "from") + " 00:00");
+            return new PricingEngine.Quote(text(o, "roomType"), Math.floorDiv(from, 1440), Integer.parseInt(text(o, "nights")),
+                    rates(o), new BigDecimal(text(o, "subtotal")), policy);
+        }
+
+        /** Nights per rate as [{"rate":1200,"nights":3}, ...]. */
+        private static String rates(PricingEngine.Quote q) {
+            StringBuilder out = new StringBuilder("[");
+            q.nightsByRate().forEach((rate, n) -> out.append(out.length() == 1 ? "" : ",")
+                    .append("{\"rate\":").append(Folio.plain(rate)).append(",\"nights\":").append(n).append('}'));
+            return out.append(']').toString();
+        }
+
+        /** The nights per rate of a quote or folio; empty from a server that does not send them. */
+        @SuppressWarnings("unchecked")
+        static Map<BigDecimal, Integer> rates(Map<String, Object> o) {
+            Map<BigDecimal, Integer> out = new LinkedHashMap<>();
+            if (!(o.get("rates") instanceof List)) return out;
+            for (Object r : (List<Object>) o.get("rates"))
+                out.put(new BigDecimal(text((Map<String, Object>) r, "rate")), Integer.parseInt(text((Map<String, Object>) r, "nights")));
+            return out;
+        }
+
+        static String reservation(Reservation r) {
+            return "{\"roomNumber\":" + str(r.roomNumber) + ",\"guestName\":" + str(r.guestName)
+                    + ",\"from\":" + str(Timestamps.format(r.from).substring(0, 10))
+                    + ",\"to\":" + str(Timestamps.format(r.to).substring(0, 10)) + "}";
+        }
+
+        static String reportRow(StayHistory.ReportRow r) {
+            return "{\"month\":" + str(r.month) + ",\"roomType\":" + str(r.roomType) + ",\"stays\":" + r.stays
+                    + ",\"nights\":" + r.nights + ",\"roomRevenue\":" + Folio.plain(r.roomRevenue)
+                    + ",\"totalRevenue\":" + Folio.plain(r.total) + ",\"occupancy\":" + r.occupancy + "}";
+        }
+
+        static StayHistory.ReportRow reportRow(Map<String, Object> o) {
+            StayHistory.ReportRow r = new StayHistory.ReportRow(text(o, "month"), text(o, "roomType"));
+            r.stays = Long.parseLong(text(o, "stays"));
+            r.nights = Long.parseLong(text(o, "nights"));
+            r.roomRevenue = new BigDecimal(text(o, "roomRevenue"));
+            r.total = new BigDecimal(text(o, "totalRevenue"));
+            r.occupancy = Double.parseDouble(text(o, "occupancy"));
+            return r;
+        }
+
+        static String roomLists(Map<String, List<String>> m) {
+            StringBuilder sb = new StringBuilder("{");
+            for (Map.Entry<String, List<String>> e : m.entrySet()) {
+                if (sb.length() > 1) sb.append(',');
+                sb.append(str(e.getKey())).append(":[");
+                for (int k = 0; k < e.getValue().size(); k++) sb.append(k > 0 ? "," : "").append(str(e.getValue().get(k)));
+                sb.append(']');
+            }
+            return sb.append('}').toString();
         }
+    }
 
-        String toCSV() {
-            return escapeCSV(roomNumber) + "," + escapeCSV(roomType) + "," +
-                   pricePerNight + "," + escapeCSV(guestName) + "," +
-                   escapeCSV(checkInDate) + "," + escapeCSV(checkOutDate);
+    // ---- HTTP server ----
+    // --server mode: the BookingService over a small JSON API on the JDK's HttpServer,
+    // one virtual thread per request where the JDK has them (21+), a cached pool before.
+    //
+    //   GET  /rooms[?q=&offset=&limit=]   GET /rooms/{number}   POST /rooms {roomNumber, roomType, price}
+    //   POST /checkin {roomNumber, guestName}
+    //   GET  /bill?room=&tax=&discount=   POST /checkout {roomNumber, taxPercent, discountPercent}
+    //   POST /reservations {roomNumber, guestName, from, to}   GET /availability?from=&to=[&type=]
+    //   GET  /report?from=&to=   POST /save
+    //
+    // Bills and checkouts are priced at the server's clock: a client cannot pick the time it leaves.
+    static class HttpDeskServer {
+        private final BookingService desk;
+        private final com.sun.net.httpserver.HttpServer server;
+
+        HttpDeskServer(BookingService desk, java.net.InetSocketAddress address) throws IOException {
+            this.desk = desk;
+            server = com.sun.net.httpserver.HttpServer.create(address, 1024);
+            server.setExecutor(requestExecutor());
+            server.createContext("/rooms", ex -> handle(ex, this::rooms));
+            server.createContext("/checkin", ex -> handle(ex, this::checkIn));
+            server.createContext("/bill", ex -> handle(ex, this::bill));
+            server.createContext("/checkout", ex -> handle(ex, this::checkOut));
+            server.createContext("/quote", ex -> handle(ex, this::quote));
+            server.createContext("/reservations", ex -> handle(ex, this::reserve));
+            server.createContext("/availability", ex -> handle(ex, this::availability));
+            server.createContext("/report", ex -> handle(ex, this::report));
+            server.createContext("/save", ex -> handle(ex, e -> { post(e); return "{\"status\":" + Json.str(desk.save()) + "}"; }));
         }
 
-        static String escapeCSV(String s) {
-            if (s == null) return "";
-            if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
-                s = s.replace("\"", "\"\"");
-                return "\"" + s + "\"";
+        void start() { server.start(); }
+        void stop() { server.stop(1); }
+        java.net.InetSocketAddress address() { return server.getAddress(); }
+
+        static ExecutorService requestExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                return Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "http-request");
+                    t.setDaemon(true);
+                    return t;
+                });
             }
-            return s;
+        }
+
+        interface Route {
+            /** Returns the JSON response body, or null if the route wrote the response itself. */
+            String serve(com.sun.net.httpserver.HttpExchange ex) throws IOException;
+        }
+
+        private void handle(com.sun.net.httpserver.HttpExchange ex, Route route) throws IOException {
+            long started = Metrics.start();
+            try {
+                String body = route.serve(ex);
+                if (body != null) send(ex, 200, body);
+                Metrics.HTTP.record(started);
+            } catch (BookingException e) {
+                send(ex, e.kind.httpStatus, "{\"error\":" + Json.str(e.getMessage()) + ",\"kind\":\"" + e.kind + "\"}");
+            } catch (IllegalArgumentException e) {
+                send(ex, 400, "{\"error\":" + Json.str(e.getMessage()) + ",\"kind\":\"INVALID\"}");
+            } catch (MethodNotAllowed e) {
+                send(ex, 405, "{\"error\":\"Method not allowed\",\"kind\":\"INVALID\"}");
+            } catch (IOException e) {
+                // a body that could not be read was answered as 400 by post(); this is our own I/O
+                Metrics.HTTP.failed();
+                e.printStackTrace();
+                if (ex.getResponseCode() == -1) // nothing sent yet; a streamed page cannot be taken back
+                    send(ex, 500, "{\"error\":" + Json.str(String.valueOf(e.getMessage())) + ",\"kind\":\"UNAVAILABLE\"}");
+            } catch (RuntimeException e) {
+                Metrics.HTTP.failed();
+                e.printStackTrace();
+                send(ex, 500, "{\"error\":" + Json.str(String.valueOf(e.getMessage())) + ",\"kind\":\"UNAVAILABLE\"}");
+            } finally {
+                ex.close();
+            }
+        }
+
+        private static class MethodNotAllowed extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+        }
+
+        private static void send(com.sun.net.httpserver.HttpExchange ex, int status, String json) throws IOException {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(status, bytes.length);
+            ex.getResponseBody().write(bytes);
+        }
+
+        private static Map<String, Object> post(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            if (!ex.getRequestMethod().equals("POST")) throw new MethodNotAllowed();
+            byte[] body;
+            try { body = ex.getRequestBody().readAllBytes(); }
+            catch (IOException e) { throw new BookingException(BookingException.Kind.INVALID, "Could not read the request body: " + e.getMessage()); }
+            return Json.object(new String(body, StandardCharsets.UTF_8).trim());
+        }
+
+        private static Map<String, String> query(com.sun.net.httpserver.HttpExchange ex) {
+            if (!ex.getRequestMethod().equals("GET")) throw new MethodNotAllowed();
+            Map<String, String> q = new HashMap<>();
+            String raw = ex.getRequestURI().getRawQuery();
+            if (raw == null) return q;
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                String k = eq < 0 ? pair : pair.substring(0, eq);
+                String v = eq < 0 ? "" : pair.substring(eq + 1);
+                q.put(java.net.URLDecoder.decode(k, StandardCharsets.UTF_8), java.net.URLDecoder.decode(v, StandardCharsets.UTF_8));
+            }
+            return q;
+        }
+
+        private static long date(String text, String name) {
+            long m = Timestamps.parse(text + " 00:00");
+            if (m == Timestamps.NONE || m == Timestamps.INVALID)
+                throw new BookingException(BookingException.Kind.INVALID, "Expected " + name + " as yyyy-MM-dd");
+            return m;
+        }
+
+        private String rooms(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            String path = ex.getRequestURI().getPath();
+            // the context matches any path starting with /rooms, /roomsX included
+            if (!path.equals("/rooms") && !path.startsWith("/rooms/"))
+                throw new BookingException(BookingException.Kind.NOT_FOUND, "No such resource: " + path);
+            if (ex.getRequestMethod().equals("POST")) {
+                Map<String, Object> o = post(ex);
+                return Json.room(desk.addRoom(Json.text(o, "roomNumber").trim(), Json.text(o, "roomType").trim(), Json.text(o, "price").trim()));
+            }
+            Map<String, String> q = query(ex);
+            if (path.length() > "/rooms/".length()) {
+                String rn = java.net.URLDecoder.decode(path.substring("/rooms/".length()), StandardCharsets.UTF_8);
+                Booking b = desk.find(rn);
+                if (b == null) throw new BookingException(BookingException.Kind.NOT_FOUND, "Room not found.");
+                return Json.room(b);
+            }
+            String search = q.getOrDefault("q", "").trim();
+            int offset = Math.max(0, intParam(q, "offset", 0));
+            int limit = Math.max(0, intParam(q, "limit", Integer.MAX_VALUE));
+            int total;
+            List<Booking> page;
+            if (search.isEmpty()) {
+                // without a search the page is a range of store ids: copy only those rooms
+                total = desk.rooms().size();
+                page = desk.rooms().snapshot(Math.min(offset, total), (int) Math.min(total, (long) offset + limit));
+            } else {
+                List<Booking> rows = desk.search(search);
+                total = rows.size();
+                page = rows.subList(Math.min(offset, total), (int) Math.min(total, (long) offset + limit));
+            }
+            // stream the array: it can be the whole property
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.getResponseHeaders().set("X-Total-Count", String.valueOf(total));
+            ex.sendResponseHeaders(200, 0);
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+                w.write('[');
+                for (int k = 0; k < page.size(); k++) {
+                    if (k > 0) w.write(',');
+                    w.write(Json.room(page.get(k)));
+                }
+                w.write(']');
+            }
+            return null;
+        }
+
+        private static int intParam(Map<String, String> q, String name, int fallback) {
+            try { return q.containsKey(name) ? Integer.parseInt(q.get(name)) : fallback; }
+            catch (NumberFormatException e) { throw new BookingException(BookingException.Kind.INVALID, "Bad " + name); }
+        }
+
+        private String checkIn(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            Map<String, Object> o = post(ex);
+            return Json.room(desk.checkIn(Json.text(o, "roomNumber").trim(), Json.text(o, "guestName").trim()));
+        }
+
+        private String bill(com.sun.net.httpserver.HttpExchange ex) {
+            Map<String, String> q = query(ex);
+            RatePolicy policy = RatePolicy.parse(q.getOrDefault("tax", "0"), q.getOrDefault("discount", "0"));
+            return Json.folio(desk.bill(q.getOrDefault("room", "").trim(), policy, Timestamps.now()));
+        }
+
+        private String quote(com.sun.net.httpserver.HttpExchange ex) {
+            Map<String, String> q = query(ex);
+            RatePolicy policy = RatePolicy.parse(q.getOrDefault("tax", "0"), q.getOrDefault("discount", "0"));
+            long from = date(q.getOrDefault("from", ""), "from"), to = date(q.getOrDefault("to", ""), "to");
+            return Json.quote(desk.quote(q.getOrDefault("room", "").trim(), from, to, policy));
+        }
+
+        private String checkOut(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            Map<String, Object> o = post(ex);
+            RatePolicy policy = RatePolicy.parse(Json.text(o, "taxPercent"), Json.text(o, "discountPercent"));
+            return Json.folio(desk.checkOut(Json.text(o, "roomNumber").trim(), policy, Timestamps.now()));
+        }
+
+        private String reserve(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            Map<String, Object> o = post(ex);
+            return Json.reservation(desk.reserve(Json.text(o, "roomNumber").trim(), Json.text(o, "guestName").trim(),
+                    date(Json.text(o, "from"), "from"), date(Json.text(o, "to"), "to")));
+        }
+
+        private String report(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+            Map<String, String> q = query(ex);
+            long from = date(q.getOrDefault("from", ""), "from"), to = date(q.getOrDefault("to", ""), "to");
+            if (from >= to) throw new BookingException(BookingException.Kind.INVALID, "The range must end after it starts.");
+            StringBuilder sb = new StringBuilder("[");
+            for (StayHistory.ReportRow r : desk.report(from, to)) sb.append(sb.length() > 1 ? "," : "").append(Json.reportRow(r));
+            return sb.append(']').toString();
+        }
+
+        private String availability(com.sun.net.httpserver.HttpExchange ex) {
+            Map<String, String> q = query(ex);
+            long from = date(q.getOrDefault("from", ""), "from"), to = date(q.getOrDefault("to", ""), "to");
+            if (from >= to) throw new BookingException(BookingException.Kind.INVALID, "Departure must be after arrival.");
+            String type = q.getOrDefault("type", "").trim();
+            if (type.isEmpty()) return Json.roomLists(desk.freeRoomsByType(from, to));
+            return Json.roomLists(Collections.singletonMap(RoomStore.key(type), desk.freeRooms(type, from, to)));
+        }
+    }
+
+    // ---- Thin client ----
+    // --connect mode: the window runs against a --server instance. Each call goes to the
+    // server and the room it returns is copied into a local mirror store for the table.
+    // Calls block the caller briefly; they are meant for a server on the local network.
+    static class RemoteDesk implements FrontDesk {
+        private final java.net.URI base;
+        private final java.net.http.HttpClient http = java.net.http.HttpClient.newBuilder()
+                .connectTimeout(java.time.Duration.ofSeconds(3)).build();
+        private final RoomStore mirror = new RoomStore();
+        private final ChangeBus changes = new ChangeBus();
+
+        RemoteDesk(String baseUrl) {
+            this.base = java.net.URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+        }
+
+        public RoomStore rooms() { return mirror; }
+        public ChangeBus changes() { return changes; }
+
+        private Object call(String method, String path, String json) {
+            java.net.http.HttpRequest.Builder rq = java.net.http.HttpRequest.newBuilder(base.resolve(path))
+                    .timeout(java.time.Duration.ofSeconds(30));
+            rq = json == null ? rq.GET() : rq.header("Content-Type", "application/json")
+                    .method(method, java.net.http.HttpRequest.BodyPublishers.ofString(json));
+            java.net.http.HttpResponse<String> rs;
+            try {
+                rs = http.send(rq.build(), java.net.http.HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                throw new BookingException(BookingException.Kind.UNAVAILABLE, "Server unavailable: " + ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BookingException(BookingException.Kind.UNAVAILABLE, "Interrupted");
+            }
+            Object body = Json.parse(rs.body());
+            if (rs.statusCode() >= 400) {
+                @SuppressWarnings("unchecked") Map<String, Object> err = (Map<String, Object>) body;
+                BookingException.Kind kind;
+                try { kind = BookingException.Kind.valueOf(Json.text(err, "kind")); }
+                catch (IllegalArgumentException ex) { kind = BookingException.Kind.UNAVAILABLE; }
+                throw new BookingException(kind, Json.text(err, "error"));
+            }
+            return body;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> callObject(String method, String path, String json) {
+            return (Map<String, Object>) call(method, path, json);
+        }
+
+        private static String enc(String s) {
+            return java.net.URLEncoder.encode(s, StandardCharsets.UTF_8);
+        }
+
+        /** Brings the mirror's copy of a room in line with the server's. */
+        private Booking upsert(Booking server) {
+            Booking b = mirror.find(server.roomNumber);
+            if (b == null) {
+                mirror.add(server);
+                changes.publish(ChangeBus.Change.of(ChangeBus.Change.Kind.ROOM_ADDED, server.copy()));
+                return server;
+            }
+            if (server.isOccupied()) mirror.checkIn(b, server.guestName, server.checkInDate);
+            else mirror.checkOut(b, server.checkOutDate);
+            changes.publish(ChangeBus.Change.of(server.isOccupied() ? ChangeBus.Change.Kind.CHECKED_IN : ChangeBus.Change.Kind.CHECKED_OUT, b.copy()));
+            return b;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Loaded read() throws IOException {
+            List<Booking> rows = new ArrayList<>();
+            long today = Math.floorDiv(Timestamps.now(), 1440) * 1440;
+            BigDecimal revenue = BigDecimal.ZERO;
+            try {
+                for (Object o : (List<Object>) call("GET", "rooms", null)) rows.add(Json.room((Map<String, Object>) o));
+                for (StayHistory.ReportRow r : report(today, today + 1440)) revenue = revenue.add(r.total);
+            } catch (BookingException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+            return new Loaded(rows, Collections.emptyList(), true, " from " + base, revenue, null);
+        }
+
+        public void apply(Loaded loaded) {
+            mirror.clear();
+            for (Booking b : loaded.rows) mirror.add(b);
+            mirror.counters().revenueSoFar(Timestamps.now(), loaded.revenueToday);
+            changes.publish(ChangeBus.Change.loaded(mirror.size()));
+        }
+
+        public Booking addRoom(String rn, String rt, String price) {
+            return upsert(Json.room(callObject("POST", "rooms", "{\"roomNumber\":" + Json.str(rn)
+                    + ",\"roomType\":" + Json.str(rt) + ",\"price\":" + Json.str(price) + "}")));
+        }
+
+        public Booking checkIn(String rn, String guest) {
+            return upsert(Json.room(callObject("POST", "checkin", "{\"roomNumber\":" + Json.str(rn)
+                    + ",\"guestName\":" + Json.str(guest) + "}")));
+        }
+
+        /** The server's folio, rebuilt from its nights and rates so billText is available. */
+        private Folio folio(Map<String, Object> o, RatePolicy policy) {
+            Booking b = Json.room(o);
+            b.pricePerNight = Double.parseDouble(Json.text(o, "pricePerNight"));
+            b.checkInDate = Json.text(o, "checkIn");
+            long at = Long.parseLong(Json.text(o, "at"));
+            int nights = Integer.parseInt(Json.text(o, "nights"));
+            PricingEngine.Quote quote = new PricingEngine.Quote(b.roomType, Math.floorDiv(at, 1440) - nights, nights,
+                    Json.rates(o), new BigDecimal(Json.text(o, "subtotal")), policy);
+            return new Folio(b, at, quote);
+        }
+
+        public PricingEngine.Quote quote(String rn, long from, long to, RatePolicy policy) {
+            return Json.quote(callObject("GET", "quote?room=" + enc(rn) + "&from=" + Timestamps.format(from).substring(0, 10)
+                    + "&to=" + Timestamps.format(to).substring(0, 10) + "&tax=" + enc(policy.taxPercent.toPlainString())
+                    + "&discount=" + enc(policy.discountPercent.toPlainString()), null), policy);
+        }
+
+        /** The server bills at its own clock, so `at` is not sent; the folio says which minute it used. */
+        public Folio bill(String rn, RatePolicy policy, long at) {
+            return folio(callObject("GET", "bill?room=" + enc(rn) + "&tax=" + enc(policy.taxPercent.toPlainString())
+                    + "&discount=" + enc(policy.discountPercent.toPlainString()), null), policy);
+        }
+
+        public Folio checkOut(String rn, RatePolicy policy, long at) {
+            Folio f = folio(callObject("POST", "checkout", "{\"roomNumber\":" + Json.str(rn) + ",\"taxPercent\":"
+                    + policy.taxPercent.toPlainString() + ",\"discountPercent\":" + policy.discountPercent.toPlainString() + "}"), policy);
+            Booking vacated = new Booking(f.roomNumber, f.roomType, f.pricePerNight.doubleValue());
+            vacated.checkOutDate = f.checkOut;
+            upsert(vacated);
+            mirror.counters().revenue(f.checkOutMinutes, f.total);
+            return f;
+        }
+
+        public Reservation reserve(String rn, String guest, long from, long to) {
+            Map<String, Object> o = callObject("POST", "reservations", "{\"roomNumber\":" + Json.str(rn) + ",\"guestName\":" + Json.str(guest)
+                    + ",\"from\":" + Json.str(Timestamps.format(from).substring(0, 10)) + ",\"to\":" + Json.str(Timestamps.format(to).substring(0, 10)) + "}");
+            return new Reservation(Json.text(o, "roomNumber"), Json.text(o, "guestName"), from, to);
+        }
+
+        public Map<String, List<String>> freeRoomsByType(long from, long to) {
+            return availability("", from, to);
+        }
+
+        public List<String> freeRooms(String roomType, long from, long to) {
+            return availability(roomType, from, to).getOrDefault(RoomStore.key(roomType), Collections.emptyList());
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, List<String>> availability(String type, long from, long to) {
+            Map<String, Object> o = callObject("GET", "availability?from=" + Timestamps.format(from).substring(0, 10)
+                    + "&to=" + Timestamps.format(to).substring(0, 10) + (type.isEmpty() ? "" : "&type=" + enc(type)), null);
+            Map<String, List<String>> out = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> e : o.entrySet()) {
+                List<String> rooms = new ArrayList<>();
+                for (Object r : (List<Object>) e.getValue()) rooms.add(String.valueOf(r));
+                out.put(e.getKey(), rooms);
+            }
+            return out;
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<StayHistory.ReportRow> report(long from, long to) {
+            List<StayHistory.ReportRow> out = new ArrayList<>();
+            for (Object o : (List<Object>) call("GET", "report?from=" + Timestamps.format(from).substring(0, 10)
+                    + "&to=" + Timestamps.format(to).substring(0, 10), null)) out.add(Json.reportRow((Map<String, Object>) o));
+            return out;
+        }
+
+        public String save() {
+            return Json.text(callObject("POST", "save", "{}"), "status");
+        }
+
+        public void shutdown() {
+            changes.shutdown();
+        }
+    }
+
+    // ---- Table model ----
+    // Reads rows straight out of the RoomStore and formats cells only when the table
+    // asks for them. A search installs a filter: the ascending ids of matching rooms,
+    // not copies of the rows. Mutations fire events for the one row they touched.
+    // The row count is the model's own, moved only when the table is told, because
+    // the bus delivers a change a tick after the store has made it.
+    private static class BookingTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMNS = {"Room #", "Type", "Price/night", "Guest", "Check-in", "Check-out"};
+        private final RoomStore store;
+        private int[] filter; // null shows every room
+        private int rooms;    // store ids [0, rooms) have been announced to the table
+
+        BookingTableModel(RoomStore store) {
+            this.store = store;
+        }
+
+        public int getRowCount() { return filter == null ? rooms : filter.length; }
+        public int getColumnCount() { return COLUMNS.length; }
+        public String getColumnName(int c) { return COLUMNS[c]; }
+
+        public Object getValueAt(int r, int c) {
+            Booking b = bookingAt(r);
+            switch (c) {
+                case 0: return b.roomNumber;
+                case 1: return b.roomType;
+                case 2: return String.format("%.2f", b.pricePerNight);
+                case 3: return b.guestName;
+                case 4: return b.checkInDate;
+                default: return b.checkOutDate;
+            }
+        }
+
+        Booking bookingAt(int row) {
+            return store.get(filter == null ? row : filter[row]);
+        }
+
+        /** How many store ids the table knows about; a filter must stay below it. */
+        int rooms() { return rooms; }
+
+        /** Every room, taking the first n store ids as the rows; n must not exceed the store. */
+        void showAll(int n) {
+            filter = null;
+            rooms = n;
+            fireTableDataChanged();
+        }
+
+        void showOnly(int[] ids) {
+            filter = ids;
+            fireTableDataChanged();
+        }
+
+        void roomAdded(Booking b) {
+            if (b.id < rooms) return; // already shown by a reload
+            int from = rooms;
+            rooms = b.id + 1;
+            if (filter == null) fireTableRowsInserted(from, b.id);
+        }
+
+        /** Takes in rooms up to id n - 1 without an event per row. */
+        void roomsAdded(int n) {
+            rooms = Math.max(rooms, n);
+            fireTableDataChanged();
+        }
+
+        void roomChanged(Booking b) {
+            int r = filter == null ? (b.id < rooms ? b.id : -1) : Arrays.binarySearch(filter, b.id);
+            if (r >= 0) fireTableRowsUpdated(r, r);
         }
     }
 
     // ---- UI & state ----
-    private DefaultTableModel tableModel;
+    private BookingTableModel tableModel;
     private JTable table;
     private JTextField tfRoomNumber, tfRoomType, tfPrice, tfGuestName, tfSearch;
     private JTextField tfTaxPercent, tfDiscountPercent;
-    private JLabel statusLabel;
+    private JLabel statusLabel, metricsLabel, dashboardLabel;
+    private javax.swing.Timer searchTimer;
+    private SwingWorker<int[], Void> searchTask;
 
-    private final java.util.List<Booking> bookings = new ArrayList<>();
-    private final Path dataFile = Paths.get("bookings.csv");
-    private final SimpleDateFormat dtFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    /** bookings.csv unless -Dhms.dataFile names another; a *.bin name selects the binary snapshot. */
+    static final Path DATA_FILE = Paths.get(System.getProperty("hms.dataFile", "bookings.csv"));
+
+    private final Path dataFile = DATA_FILE;
+    private final FrontDesk desk;
+    private final RoomStore bookings;
 
     // Gradient colors for buttons (Style C)
     private final Color btnStart = new Color(74,144,226); 
     private final Color btnEnd   = new Color(53,122,189); 
 
-    public HotelManagementSystem() {
-        super("Hotel Management System");
+    /** A window on the local data files, or on a --server instance when serverUrl is given. */
+    public HotelManagementSystem(String serverUrl) {
+        super(serverUrl == null ? "Hotel Management System" : "Hotel Management System - " + serverUrl);
+        desk = serverUrl != null ? new RemoteDesk(serverUrl) : new BookingService(dataFile,
+                msg -> SwingUtilities.invokeLater(() -> status(msg)),
+                ex -> SwingUtilities.invokeLater(() -> {
+                    JOptionPane.showMessageDialog(this, "Failed to save: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    status("Save failed.");
+                }));
+        bookings = desk.rooms();
+        desk.changes().subscribe(batch -> SwingUtilities.invokeLater(() -> changed(batch)));
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(980, 640);
         setLocationRelativeTo(null);
         initComponents();
         loadData();
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                desk.shutdown();
+            }
+        });
     }
 
     private void initComponents() {
@@ -92,16 +4870,7 @@ public class HotelManagementSystem extends JFrame {
         getContentPane().setBackground(bg);
 
         
-        JPanel header = new JPanel() {
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                Graphics2D g2 = (Graphics2D) g;
-                int w = getWidth(), h = getHeight();
-                GradientPaint gp = new GradientPaint(0,0,new Color(45,118,200), w, h, new Color(30,86,160));
-                g2.setPaint(gp);
-                g2.fillRect(0,0,w,h);
-            }
-        };
+        JPanel header = new GradientHeader(new Color(45,118,200), new Color(30,86,160));
         header.setPreferredSize(new Dimension(900, 76));
         header.setLayout(new BorderLayout());
         JLabel title = new JLabel("Hotel Management System");
@@ -137,6 +4906,10 @@ public class HotelManagementSystem extends JFrame {
         JButton btnCheckOut = createGradientButton("\u21AA  Check Out");  // right arrow curving
         JButton btnSave     = createGradientButton("\uD83D\uDCBE  Save"); // floppy unicode
         JButton btnLoad     = createGradientButton("\u21BB  Load");       // reload
+        JButton btnReserve  = createGradientButton("\u2606  Reserve");    // star
+        JButton btnFree     = createGradientButton("\u2714  Availability"); // check mark
+        JButton btnAudit    = createGradientButton("\u263E  Night Audit");  // moon
+        JButton btnRevenue  = createGradientButton("\u2211  Revenue");      // sigma
 
         // Layout row 0
         c.gridx = 0; c.gridy = 0; form.add(new JLabel("Room #"), c);
@@ -167,6 +4940,11 @@ public class HotelManagementSystem extends JFrame {
         
         c.gridx = 2; c.gridy = 2; form.add(btnSave, c);
         c.gridx = 3; form.add(btnLoad, c);
+        c.gridx = 4; c.gridwidth = 2; form.add(btnReserve, c);
+        c.gridx = 6; form.add(btnFree, c);
+        c.gridwidth = 1;
+        c.gridx = 2; c.gridy = 3; form.add(btnAudit, c);
+        c.gridx = 3; form.add(btnRevenue, c);
 
         // Search panel
         JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 6));
@@ -180,10 +4958,7 @@ public class HotelManagementSystem extends JFrame {
         searchPanel.add(btnShowAll);
 
         // Table
-        String[] columns = {"Room #", "Type", "Price/night", "Guest", "Check-in", "Check-out"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int r, int c) { return false; }
-        };
+        tableModel = new BookingTableModel(bookings);
         table = new JTable(tableModel);
         table.setRowHeight(30);
         table.setFont(new Font("Segoe UI", Font.PLAIN, 13));
@@ -200,6 +4975,37 @@ public class HotelManagementSystem extends JFrame {
         statusLabel.setBackground(new Color(45,118,200));
         statusLabel.setForeground(Color.WHITE);
         statusLabel.setBorder(new EmptyBorder(8,12,8,12));
+        metricsLabel = new JLabel();
+        metricsLabel.setOpaque(true);
+        metricsLabel.setBackground(statusLabel.getBackground());
+        metricsLabel.setForeground(new Color(220,232,248));
+        metricsLabel.setFont(metricsLabel.getFont().deriveFont(11f));
+        metricsLabel.setBorder(new EmptyBorder(8,12,8,12));
+        JPanel statusBar = new JPanel(new BorderLayout());
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        statusBar.add(metricsLabel, BorderLayout.EAST);
+        if (Metrics.ENABLED) {
+            javax.swing.Timer metricsTimer = new javax.swing.Timer(1000, e -> {
+                metricsLabel.setText(Metrics.readout());
+                metricsLabel.setToolTipText("Latency since start; details over JMX (io.github.ubgadeparth.hms:type=Metrics)");
+            });
+            metricsTimer.start();
+        }
+
+        // Dashboard: polls the store's counters, so a burst of changes costs at most 4 repaints a second
+        dashboardLabel = new JLabel();
+        dashboardLabel.setVerticalAlignment(SwingConstants.TOP);
+        dashboardLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        JPanel dashboard = new JPanel(new BorderLayout());
+        dashboard.setBackground(panelWhite);
+        dashboard.setBorder(BorderFactory.createCompoundBorder(
+                new EmptyBorder(8,0,8,12),
+                BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(new Color(220,220,220)), new EmptyBorder(10,12,10,12))
+        ));
+        dashboard.setPreferredSize(new Dimension(200, 0));
+        dashboard.add(dashboardLabel, BorderLayout.NORTH);
+        javax.swing.Timer dashboardTimer = new javax.swing.Timer(250, e -> updateDashboard());
+        dashboardTimer.start();
 
         // Layout center
         JPanel center = new JPanel(new BorderLayout(10,10));
@@ -210,13 +5016,14 @@ public class HotelManagementSystem extends JFrame {
         topStack.add(searchPanel, BorderLayout.SOUTH);
         center.add(topStack, BorderLayout.NORTH);
         center.add(tableScroll, BorderLayout.CENTER);
+        center.add(dashboard, BorderLayout.EAST);
 
         //  components to frame
         Container cp = getContentPane();
         cp.setLayout(new BorderLayout(10,10));
         cp.add(header, BorderLayout.NORTH);
         cp.add(center, BorderLayout.CENTER);
-        cp.add(statusLabel, BorderLayout.SOUTH);
+        cp.add(statusBar, BorderLayout.SOUTH);
         cp.setBackground(bg);
 
         // Action listeners
@@ -224,10 +5031,23 @@ public class HotelManagementSystem extends JFrame {
         btnCheckIn.addActionListener(e -> checkIn());
         btnCheckOut.addActionListener(e -> checkOut());
         btnSave.addActionListener(e -> saveData());
-        btnLoad.addActionListener(e -> { loadData(); status("Data loaded."); });
+        btnLoad.addActionListener(e -> loadData());
+        btnReserve.addActionListener(e -> reserve());
+        btnFree.addActionListener(e -> availability());
+        btnAudit.addActionListener(e -> nightAudit());
+        btnRevenue.addActionListener(e -> revenue());
         btnSearch.addActionListener(e -> search());
         btnShowAll.addActionListener(e -> refreshTable());
 
+        // search as you type, debounced so a burst of keystrokes runs one query
+        searchTimer = new javax.swing.Timer(150, e -> search());
+        searchTimer.setRepeats(false);
+        tfSearch.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { searchTimer.restart(); }
+            public void removeUpdate(DocumentEvent e) { searchTimer.restart(); }
+            public void changedUpdate(DocumentEvent e) { searchTimer.restart(); }
+        });
+
         //  auto-fill fields
         table.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
@@ -244,7 +5064,7 @@ public class HotelManagementSystem extends JFrame {
         });
 
         // Demo rooms if no data exists
-        if (!Files.exists(dataFile) && bookings.isEmpty()) {
+        if (desk instanceof BookingService && !Files.exists(dataFile) && bookings.isEmpty()) {
             bookings.add(new Booking("101","Single",1200));
             bookings.add(new Booking("102","Single",1200));
             bookings.add(new Booking("201","Double",1800));
@@ -264,15 +5084,63 @@ public class HotelManagementSystem extends JFrame {
     }
 
     
+    // Painted backgrounds are cached as images in the screen's format, at device
+    // resolution, and redrawn only when the size, the screen scale or the look and feel
+    // changes. A repaint is then a blit plus the label, which matters over remote desktop.
+    private static BufferedImage compatibleImage(Graphics2D g, int w, int h) {
+        return g.getDeviceConfiguration().createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+    }
+
+    private static class GradientHeader extends JPanel {
+        private static final long serialVersionUID = 1L;
+        private final Color from, to;
+        private transient BufferedImage cache; // rebuilt on the next paint
+        private double cacheScale;
+
+        GradientHeader(Color from, Color to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public void updateUI() {
+            super.updateUI();
+            cache = null;
+        }
+
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2 = (Graphics2D) g;
+            int w = getWidth(), h = getHeight();
+            if (w <= 0 || h <= 0) return;
+            double scale = g2.getTransform().getScaleX();
+            int sw = (int) Math.ceil(w * scale), sh = (int) Math.ceil(h * scale);
+            if (cache == null || cache.getWidth() != sw || cache.getHeight() != sh || cacheScale != scale) {
+                cache = compatibleImage(g2, sw, sh);
+                cacheScale = scale;
+                Graphics2D ig = cache.createGraphics();
+                ig.setPaint(new GradientPaint(0, 0, from, sw, sh, to));
+                ig.fillRect(0, 0, sw, sh);
+                ig.dispose();
+            }
+            g2.drawImage(cache, 0, 0, w, h, null);
+        }
+    }
+
     private static class RoundedGradientButton extends JButton {
-        private Color colorA, colorB;
+        private static final long serialVersionUID = 1L;
+        private final Color colorA, colorB, hoverA, hoverB;
         private boolean hover = false;
         private final int arc = 18;
+        private final BufferedImage[] backgrounds = new BufferedImage[2]; // normal, hover
+        private double cacheScale;
+        private java.awt.geom.RoundRectangle2D.Float hitShape;
 
         RoundedGradientButton(String text, Color a, Color b) {
             super(text);
             this.colorA = a;
             this.colorB = b;
+            this.hoverA = a.brighter();
+            this.hoverB = b.brighter();
             setContentAreaFilled(false);
             setFocusPainted(false);
             setBorderPainted(false);
@@ -288,68 +5156,75 @@ public class HotelManagementSystem extends JFrame {
             });
         }
 
+        public void updateUI() {
+            super.updateUI();
+            if (backgrounds != null) Arrays.fill(backgrounds, null); // null while the JButton constructor runs
+        }
+
+        /** The rounded gradient with its gloss, drawn once per size, scale and hover state. */
+        private BufferedImage background(Graphics2D g, int w, int h) {
+            double scale = g.getTransform().getScaleX();
+            int sw = (int) Math.ceil(w * scale), sh = (int) Math.ceil(h * scale);
+            int state = hover ? 1 : 0;
+            BufferedImage img = backgrounds[state];
+            if (img != null && img.getWidth() == sw && img.getHeight() == sh && cacheScale == scale) return img;
+            if (cacheScale != scale) Arrays.fill(backgrounds, null);
+            cacheScale = scale;
+            img = compatibleImage(g, sw, sh);
+            Graphics2D ig = img.createGraphics();
+            ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            ig.scale(scale, scale);
+            ig.setPaint(new GradientPaint(0, 0, hover ? hoverA : colorA, 0, h, hover ? hoverB : colorB));
+            ig.fillRoundRect(0, 0, w, h, arc, arc);
+            ig.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.14f));
+            ig.setPaint(Color.WHITE);
+            ig.fillRoundRect(0, 0, w, h/2, arc, arc);
+            ig.dispose();
+            return backgrounds[state] = img;
+        }
+
         protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
+            Graphics2D g2 = (Graphics2D) g;
             int w = getWidth(), h = getHeight();
+            if (w <= 0 || h <= 0) return;
+            g2.drawImage(background(g2, w, h), 0, 0, w, h, null);
 
-            
-            Color start = hover ? colorA.brighter() : colorA;
-            Color end   = hover ? colorB.brighter() : colorB;
-
-            
+            Object aa = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-            
-            GradientPaint gp = new GradientPaint(0, 0, start, 0, h, end);
-            g2.setPaint(gp);
-            g2.fillRoundRect(0, 0, w, h, arc, arc);
-
-            
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.14f));
-            g2.setPaint(Color.WHITE);
-            g2.fillRoundRect(0, 0, w, h/2, arc, arc);
-
-            
-            g2.setComposite(AlphaComposite.SrcOver);
-            FontMetrics fm = g2.getFontMetrics();
-            Rectangle r = new Rectangle(0,0,w,h);
-            int tx = (r.width - fm.stringWidth(getText())) / 2;
-            int ty = (r.height - fm.getHeight()) / 2 + fm.getAscent();
+            FontMetrics fm = g2.getFontMetrics(getFont());
+            int tx = (w - fm.stringWidth(getText())) / 2;
+            int ty = (h - fm.getHeight()) / 2 + fm.getAscent();
+            g2.setFont(getFont());
             g2.setColor(getForeground());
             g2.drawString(getText(), tx, ty);
-
-            g2.dispose();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aa);
         }
 
         
         public boolean contains(int x, int y) {
             int w = getWidth(), h = getHeight();
-            Shape round = new java.awt.geom.RoundRectangle2D.Float(0,0,w,h,arc,arc);
-            return round.contains(x,y);
+            if (hitShape == null || hitShape.width != w || hitShape.height != h)
+                hitShape = new java.awt.geom.RoundRectangle2D.Float(0,0,w,h,arc,arc);
+            return hitShape.contains(x,y);
         }
     }
 
     //  Application logic 
+    /** Shows a rejected operation the way the form always has: title and icon by kind. */
+    private void reject(BookingException ex) {
+        int icon;
+        switch (ex.kind) {
+            case MISSING: case OCCUPIED: case RESERVED: icon = JOptionPane.WARNING_MESSAGE; break;
+            case VACANT: icon = JOptionPane.INFORMATION_MESSAGE; break;
+            default: icon = JOptionPane.ERROR_MESSAGE;
+        }
+        JOptionPane.showMessageDialog(this, ex.getMessage(), ex.kind.title, icon);
+    }
+
     private void addRoom() {
         String rn = tfRoomNumber.getText().trim();
-        String rt = tfRoomType.getText().trim();
-        String pr = tfPrice.getText().trim();
-        if (rn.isEmpty() || rt.isEmpty() || pr.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Enter room number, type and price.", "Missing", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        if (findBookingByRoom(rn) != null) {
-            JOptionPane.showMessageDialog(this, "Room already exists.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        double price;
-        try { price = Double.parseDouble(pr); }
-        catch (NumberFormatException ex) {
-            JOptionPane.showMessageDialog(this, "Invalid price.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        bookings.add(new Booking(rn, rt, price));
-        refreshTable();
+        try { desk.addRoom(rn, tfRoomType.getText().trim(), tfPrice.getText().trim()); }
+        catch (BookingException ex) { reject(ex); return; }
         clearInputs();
         status("Added room " + rn);
     }
@@ -357,23 +5232,8 @@ public class HotelManagementSystem extends JFrame {
     private void checkIn() {
         String rn = tfRoomNumber.getText().trim();
         String guest = tfGuestName.getText().trim();
-        if (rn.isEmpty() || guest.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Provide room number and guest name.", "Missing", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        Booking b = findBookingByRoom(rn);
-        if (b == null) {
-            JOptionPane.showMessageDialog(this, "Room not found. Add the room first.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        if (b.isOccupied()) {
-            JOptionPane.showMessageDialog(this, "Room is already occupied by " + b.guestName, "Occupied", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        b.guestName = guest;
-        b.checkInDate = now();
-        b.checkOutDate = "";
-        refreshTable();
+        try { desk.checkIn(rn, guest); }
+        catch (BookingException ex) { reject(ex); return; }
         clearInputs();
         status("Checked in " + guest + " to room " + rn);
     }
@@ -385,155 +5245,275 @@ public class HotelManagementSystem extends JFrame {
             int r = table.getSelectedRow();
             if (r >= 0) rn = tableModel.getValueAt(r,0).toString();
         }
-        if (rn.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Select a room or enter room number to check out.", "Missing", JOptionPane.WARNING_MESSAGE);
+        RatePolicy policy = RatePolicy.parse(tfTaxPercent.getText(), tfDiscountPercent.getText());
+        long at = Timestamps.now();
+        Folio folio;
+        long started = Metrics.start();
+        try { folio = desk.bill(rn, policy, at); }
+        catch (BookingException ex) { Metrics.BILL.failed(); reject(ex); return; }
+        Metrics.BILL.record(started);
+
+        JTextArea ta = new JTextArea(folio.billText());
+        ta.setEditable(false);
+        ta.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JScrollPane sp = new JScrollPane(ta);
+        sp.setPreferredSize(new Dimension(520, 320));
+        int option = JOptionPane.showConfirmDialog(this, sp, "Bill - Confirm Checkout and Payment", JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (option != JOptionPane.YES_OPTION) {
+            status("Checkout cancelled for room " + rn);
+            return;
+        }
+
+        // finalize checkout at the billed minute so the charge matches what was shown
+        try { folio = desk.checkOut(rn, policy, at); }
+        catch (BookingException ex) { reject(ex); return; }
+        status("Checked out room " + rn + " | Paid: " + Folio.money(folio.total));
+        JOptionPane.showMessageDialog(this, "Checkout complete. Total paid: " + Folio.money(folio.total), "Paid", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void reserve() {
+        String rn = tfRoomNumber.getText().trim();
+        String guest = tfGuestName.getText().trim();
+        if (rn.isEmpty() || guest.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Provide room number and guest name.", "Missing", JOptionPane.WARNING_MESSAGE);
             return;
         }
         Booking b = findBookingByRoom(rn);
         if (b == null) {
-            JOptionPane.showMessageDialog(this, "Room not found.", "Error", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, "Room not found. Add the room first.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        if (!b.isOccupied()) {
-            JOptionPane.showMessageDialog(this, "Room is already vacant.", "Info", JOptionPane.INFORMATION_MESSAGE);
+        long[] range = askDates("Reserve room " + b.roomNumber + " for " + guest);
+        if (range == null) return;
+        Reservation r;
+        try { r = desk.reserve(b.roomNumber, guest, range[0], range[1]); }
+        catch (BookingException ex) {
+            // a clash with another stay has always been shown as a plain error
+            JOptionPane.showMessageDialog(this, ex.getMessage(), ex.kind == BookingException.Kind.OCCUPIED ? "Occupied" : "Error",
+                    ex.kind == BookingException.Kind.OCCUPIED ? JOptionPane.WARNING_MESSAGE : JOptionPane.ERROR_MESSAGE);
             return;
         }
+        clearInputs();
+        String quoted = "";
+        try {
+            PricingEngine.Quote q = desk.quote(b.roomNumber, r.from, r.to, RatePolicy.parse(tfTaxPercent.getText(), tfDiscountPercent.getText()));
+            quoted = " | Quote: " + Folio.money(q.total) + " for " + q.nights + (q.nights == 1 ? " night" : " nights");
+        } catch (BookingException ex) {
+            // the reservation stands; the quote is only shown
+        }
+        status("Reserved room " + b.roomNumber + " for " + guest + " " + r.dates() + quoted);
+    }
 
-        double taxPercent = parseDoubleSafe(tfTaxPercent.getText().trim(), 0.0);
-        double discountPercent = parseDoubleSafe(tfDiscountPercent.getText().trim(), 0.0);
-
-        // compute nights
-        String cinStr = b.checkInDate;
-        Date checkInDate;
+    private void availability() {
+        String type = tfRoomType.getText().trim();
+        long[] range = askDates(type.isEmpty() ? "Free rooms of every type" : "Free " + type + " rooms");
+        if (range == null) return;
+        StringBuilder out = new StringBuilder();
         try {
-            if (cinStr == null || cinStr.trim().isEmpty())
-                throw new ParseException("No check-in timestamp", 0);
-            checkInDate = dtFormat.parse(cinStr);
-        } catch (ParseException ex) {
-            checkInDate = new Date(System.currentTimeMillis() - (1000L * 60 * 60 * 24));
-        }
-        Date checkOutNow = new Date();
-        long diffMs = checkOutNow.getTime() - checkInDate.getTime();
-        double diffDays = (double) diffMs / (1000.0 * 60.0 * 60.0 * 24.0);
-        int nights = (int) Math.max(1, Math.ceil(diffDays));
-        double subtotal = nights * b.pricePerNight;
-
-        double discountAmount = subtotal * (discountPercent / 100.0);
-        double taxable = subtotal - discountAmount;
-        double taxAmount = taxable * (taxPercent / 100.0);
-        double finalTotal = taxable + taxAmount;
-
-        // Build bill text
-        StringBuilder bill = new StringBuilder();
-        bill.append("Bill for room ").append(b.roomNumber).append("\n");
-        bill.append("-------------------------------\n");
-        bill.append(String.format("Guest: %s\n", b.guestName));
-        bill.append(String.format("Room type: %s\n", b.roomType));
-        bill.append(String.format("Price per night: %.2f\n", b.pricePerNight));
-        bill.append(String.format("Check-in: %s\n", b.checkInDate));
-        bill.append(String.format("Check-out: %s\n", dtFormat.format(checkOutNow)));
-        bill.append(String.format("Nights charged: %d\n", nights));
-        bill.append("\n");
-        bill.append(String.format("Subtotal (n×price): %.2f\n", subtotal));
-        bill.append(String.format("Discount (%.2f%%): -%.2f\n", discountPercent, discountAmount));
-        bill.append(String.format("Taxable amount: %.2f\n", taxable));
-        bill.append(String.format("Tax (%.2f%%): +%.2f\n", taxPercent, taxAmount));
-        bill.append("-------------------------------\n");
-        bill.append(String.format("Total payable: %.2f\n", finalTotal));
-
-        JTextArea ta = new JTextArea(bill.toString());
+            if (type.isEmpty()) {
+                for (Map.Entry<String, List<String>> e : desk.freeRoomsByType(range[0], range[1]).entrySet())
+                    out.append(e.getKey()).append(": ").append(e.getValue().size()).append(" free ").append(e.getValue()).append("\n");
+            } else {
+                List<String> free = desk.freeRooms(type, range[0], range[1]);
+                out.append(free.size()).append(" free ").append(type).append(" rooms\n");
+                for (String room : free) out.append(room).append("\n");
+            }
+        } catch (BookingException ex) { reject(ex); return; }
+        JTextArea ta = new JTextArea(out.toString());
         ta.setEditable(false);
-        ta.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        ta.setLineWrap(true);
         JScrollPane sp = new JScrollPane(ta);
-        sp.setPreferredSize(new Dimension(520, 320));
-        int option = JOptionPane.showConfirmDialog(this, sp, "Bill - Confirm Checkout and Payment", JOptionPane.YES_NO_OPTION, JOptionPane.PLAIN_MESSAGE);
-        if (option != JOptionPane.YES_OPTION) {
-            status("Checkout cancelled for room " + rn);
-            return;
+        sp.setPreferredSize(new Dimension(420, 260));
+        JOptionPane.showMessageDialog(this, sp, "Availability", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    /** Asks for an arrival and departure date; returns {from, to} in minutes or null. */
+    private long[] askDates(String title) {
+        String in = JOptionPane.showInputDialog(this, "Dates (yyyy-MM-dd to yyyy-MM-dd):", title, JOptionPane.QUESTION_MESSAGE);
+        if (in == null) return null;
+        java.util.regex.Matcher m = java.util.regex.Pattern.compile("\\d{4}-\\d{2}-\\d{2}").matcher(in);
+        long from = m.find() ? Timestamps.parse(m.group() + " 00:00") : Timestamps.INVALID;
+        long to = m.find() ? Timestamps.parse(m.group() + " 00:00") : Timestamps.INVALID;
+        if (from == Timestamps.INVALID || to == Timestamps.INVALID || from >= to) {
+            JOptionPane.showMessageDialog(this, "Enter two dates, arrival before departure.", "Error", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
+        return new long[] {from, to};
+    }
+
+    private void nightAudit() {
+        List<Booking> snapshot = bookings.snapshot();
+        RatePolicy policy = RatePolicy.parse(tfTaxPercent.getText(), tfDiscountPercent.getText());
+        PricingEngine pricing = desk instanceof BookingService ? ((BookingService) desk).pricing() : PricingEngine.FLAT;
+        long at = Timestamps.now();
+        Path out = dataFile.resolveSibling("night-audit-" + Timestamps.format(at).substring(0, 10) + ".csv");
+        status("Running night audit...");
+        new SwingWorker<Long, Void>() {
+            long t0 = System.nanoTime();
+            protected Long doInBackground() throws IOException { return BillingEngine.nightAudit(snapshot, at, policy, pricing, out); }
+            protected void done() {
+                try {
+                    long n = get();
+                    long ms = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+                    status("Night audit: " + n + " folios written to " + out.getFileName() + " in " + ms + " ms");
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(HotelManagementSystem.this, "Night audit failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    status("Night audit failed.");
+                }
+            }
+        }.execute();
+    }
+
+    private void revenue() {
+        long[] range = askDates("Revenue by month and room type");
+        if (range == null) return;
+        status("Building revenue report...");
+        new SwingWorker<List<StayHistory.ReportRow>, Void>() {
+            protected List<StayHistory.ReportRow> doInBackground() throws IOException { return desk.report(range[0], range[1]); }
+            protected void done() {
+                List<StayHistory.ReportRow> rows;
+                try { rows = get(); }
+                catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(HotelManagementSystem.this, "Report failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    status("Report failed.");
+                    return;
+                }
+                StringBuilder out = new StringBuilder(String.format("%-8s %-12s %7s %7s %14s %10s %6s%n",
+                        "Month", "Type", "Stays", "Nights", "Revenue", "ADR", "Occ%"));
+                for (StayHistory.ReportRow r : rows)
+                    out.append(String.format("%-8s %-12s %7d %7d %14s %10s %6.1f%n", r.month, r.roomType, r.stays, r.nights,
+                            Folio.money(r.total), r.adr().toPlainString(), r.occupancy * 100));
+                if (rows.isEmpty()) out.append("No checkouts in this range.\n");
+                JTextArea ta = new JTextArea(out.toString());
+                ta.setEditable(false);
+                ta.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+                JScrollPane sp = new JScrollPane(ta);
+                sp.setPreferredSize(new Dimension(640, 320));
+                JOptionPane.showMessageDialog(HotelManagementSystem.this, sp, "Revenue", JOptionPane.PLAIN_MESSAGE);
+                status("Revenue report: " + rows.size() + " rows.");
+            }
+        }.execute();
+    }
 
-        // finalize checkout
-        b.checkOutDate = dtFormat.format(checkOutNow);
-        b.guestName = "";
-        b.checkInDate = "";
-        refreshTable();
-        status(String.format("Checked out room %s | Paid: %.2f", rn, finalTotal));
-        JOptionPane.showMessageDialog(this, String.format("Checkout complete. Total paid: %.2f", finalTotal), "Paid", JOptionPane.INFORMATION_MESSAGE);
+    private void updateDashboard() {
+        DeskCounters counters = bookings.counters();
+        long rooms = 0, occupied = 0;
+        StringBuilder types = new StringBuilder();
+        for (Map.Entry<String, long[]> e : counters.byType().entrySet()) {
+            long[] n = e.getValue();
+            rooms += n[0];
+            occupied += n[1];
+            types.append("<tr><td>").append(html(e.getKey())).append("</td><td align=right>").append(n[1])
+                 .append("</td><td align=right>").append(n[0] - n[1]).append("</td></tr>");
+        }
+        String text = "<html><b>Occupancy</b> " + (rooms == 0 ? 0 : Math.round(100.0 * occupied / rooms)) + "%<br>"
+                + occupied + " of " + rooms + " rooms occupied<br><br>"
+                + "<table cellpadding=1><tr><th align=left>Type</th><th>Occ</th><th>Free</th></tr>" + types + "</table><br>"
+                + "<b>Revenue today</b><br>" + Folio.money(counters.revenueOn(Timestamps.now())) + "</html>";
+        if (!text.equals(dashboardLabel.getText())) dashboardLabel.setText(text);
     }
 
-    private double parseDoubleSafe(String s, double fallback) {
-        if (s == null || s.isEmpty()) return fallback;
-        try { return Double.parseDouble(s); } catch (NumberFormatException ex) { return fallback; }
+    private static String html(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
     }
 
     private void search() {
         String q = tfSearch.getText().trim().toLowerCase();
         if (q.isEmpty()) { refreshTable(); return; }
-        tableModel.setRowCount(0);
-        for (Booking b : bookings) {
-            if (b.roomNumber.toLowerCase().contains(q) || b.guestName.toLowerCase().contains(q)) {
-                tableModel.addRow(b.toRow());
+        if (searchTask != null) searchTask.cancel(false);
+        // query the index off the EDT, then fill the table with the matching ids
+        long started = Metrics.start();
+        searchTask = new SwingWorker<int[], Void>() {
+            protected int[] doInBackground() { return bookings.search(q); }
+            protected void done() {
+                if (isCancelled() || searchTask != this) return;
+                int[] ids;
+                try { ids = get(); } catch (Exception ex) { Metrics.SEARCH.failed(); status("Search failed."); return; }
+                int n = 0;
+                while (n < ids.length && ids[n] < tableModel.rooms()) n++; // drop ids the table has not been told about
+                tableModel.showOnly(n == ids.length ? ids : Arrays.copyOf(ids, n));
+                Metrics.SEARCH.record(started, n);
+                status("Search results for \"" + q + "\"");
             }
+        };
+        searchTask.execute();
+    }
+
+    /** One call per bus tick, on the EDT, with every change made in that tick. */
+    private void changed(List<ChangeBus.Change> batch) {
+        int loaded = -1;
+        for (int i = 0; i < batch.size(); i++) if (batch.get(i).kind == ChangeBus.Change.Kind.LOADED) loaded = i;
+        if (loaded >= 0) {
+            showLoaded(Math.min(batch.get(loaded).rooms, bookings.size()));
+            batch = batch.subList(loaded + 1, batch.size());
+        }
+        // the store only changes on the EDT, so an id past its end is from before a load
+        if (batch.size() > 64) {
+            int n = 0;
+            for (ChangeBus.Change c : batch)
+                if (c.kind == ChangeBus.Change.Kind.ROOM_ADDED && c.room.id < bookings.size()) n = Math.max(n, c.room.id + 1);
+            tableModel.roomsAdded(n);
+            status("Applied " + batch.size() + " changes. " + bookings.size() + " rooms.");
+            return;
+        }
+        for (ChangeBus.Change c : batch) {
+            if (c.room.id >= bookings.size()) continue;
+            if (c.kind == ChangeBus.Change.Kind.ROOM_ADDED) tableModel.roomAdded(c.room);
+            else tableModel.roomChanged(c.room);
         }
-        status("Search results for \"" + q + "\"");
+    }
+
+    /** Shows the first n rooms after a load; ids from before it mean nothing now, so any search result goes too. */
+    private void showLoaded(int n) {
+        if (searchTask != null) { searchTask.cancel(false); searchTask = null; }
+        long started = Metrics.start();
+        tableModel.showAll(n);
+        Metrics.REFRESH.record(started, n);
     }
 
     private void refreshTable() {
-        tableModel.setRowCount(0);
-        for (Booking b : bookings) tableModel.addRow(b.toRow());
+        if (searchTask != null) { searchTask.cancel(false); searchTask = null; }
+        long started = Metrics.start();
+        tableModel.showAll(bookings.size());
+        Metrics.REFRESH.record(started, bookings.size());
         status("Refreshed. " + bookings.size() + " rooms.");
     }
 
     private void saveData() {
-        try (BufferedWriter w = Files.newBufferedWriter(dataFile)) {
-            w.write("roomNumber,roomType,price,guestName,checkIn,checkOut\n");
-            for (Booking b : bookings) {
-                w.write(b.toCSV()); w.write("\n");
-            }
-            status("Saved to " + dataFile.toAbsolutePath());
-            JOptionPane.showMessageDialog(this, "Data saved to " + dataFile.getFileName(), "Saved", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to save: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            status("Save failed.");
-        }
+        try { status(desk.save()); }
+        catch (BookingException ex) { reject(ex); }
     }
 
     private void loadData() {
-        bookings.clear();
-        if (!Files.exists(dataFile)) { refreshTable(); status("No data file. Starting fresh or with demo rooms."); return; }
-        try (BufferedReader r = Files.newBufferedReader(dataFile)) {
-            r.readLine(); // skip header
-            String line;
-            while ((line = r.readLine()) != null) {
-                String[] parts = parseCSVLine(line);
-                String rn = parts.length>0 ? parts[0] : "";
-                String rt = parts.length>1 ? parts[1] : "";
-                double price = 0;
-                if (parts.length>2) {
-                    try { price = Double.parseDouble(parts[2]); } catch (Exception e) { price = 0; }
-                }
-                String guest = parts.length>3 ? parts[3] : "";
-                String cin = parts.length>4 ? parts[4] : "";
-                String cout = parts.length>5 ? parts[5] : "";
-
-                Booking b = new Booking(rn, rt, price);
-                b.guestName = guest == null ? "" : guest;
-                b.checkInDate = cin == null ? "" : cin;
-                b.checkOutDate = cout == null ? "" : cout;
-                bookings.add(b);
+        status("Loading " + (desk instanceof RemoteDesk ? "rooms" : dataFile.getFileName()) + "...");
+        // parse and replay off the EDT, then swap the rows in on it
+        long started = Metrics.start();
+        new SwingWorker<Loaded, Void>() {
+            protected Loaded doInBackground() throws IOException { return desk.read(); }
+            protected void done() {
+                Loaded loaded;
+                try { loaded = get(); }
+                catch (Exception ex) {
+                    Metrics.LOAD.failed();
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(HotelManagementSystem.this, "Failed to load: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    status("Load failed.");
+                    return;
+                }
+                desk.apply(loaded);
+                showLoaded(bookings.size()); // now: the store may have shrunk under the table
+                Metrics.LOAD.record(started, bookings.size());
+                status(loaded.found ? "Loaded " + bookings.size() + " records" + loaded.summary : "No data file. Starting fresh or with demo rooms.");
             }
-            refreshTable();
-            status("Loaded " + bookings.size() + " records from " + dataFile.getFileName());
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to load: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            status("Load failed.");
-        }
+        }.execute();
     }
 
     
-    private static String[] parseCSVLine(String line) {
+    static String[] parseCSVLine(String line) {
         List<String> fields = new ArrayList<>();
         StringBuilder cur = new StringBuilder();
         boolean inQuotes = false;
@@ -558,8 +5538,7 @@ public class HotelManagementSystem extends JFrame {
     }
 
     private Booking findBookingByRoom(String roomNumber) {
-        for (Booking b : bookings) if (b.roomNumber.equalsIgnoreCase(roomNumber)) return b;
-        return null;
+        return bookings.find(roomNumber);
     }
 
     private void clearInputs() {
@@ -573,15 +5552,200 @@ public class HotelManagementSystem extends JFrame {
         statusLabel.setText(" " + s);
     }
 
-    private String now() {
-        return dtFormat.format(new Date());
+    /** Snapshot plus journal, for the command-line modes. */
+    private static List<Booking> loadHeadless(Path data, Path journal) throws IOException {
+        List<Booking> rows = Files.exists(data) ? PersistenceService.load(data).rows : new ArrayList<>();
+        BookingJournal.replay(rows, journal);
+        return rows;
     }
 
     public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "";
+        try {
+            switch (mode) {
+                case "--memory-report": {
+                    // compare the heap cost of List<Booking> with the columnar layout for a data file
+                    Path file = args.length > 1 ? Paths.get(args[1]) : DATA_FILE;
+                    BulkCsvLoader.Result r = PersistenceService.load(file);
+                    System.out.println("Loaded " + r.summary());
+                    System.out.print(ColumnarBookingStore.footprintReport(r.rows));
+                    return;
+                }
+                case "--night-audit": {
+                    // provisional folios for every occupied room in bookings.csv + journal
+                    long at = Timestamps.now();
+                    Path out = Paths.get(args.length > 1 ? args[1] : "night-audit-" + Timestamps.format(at).substring(0, 10) + ".csv");
+                    List<Booking> rows = loadHeadless(DATA_FILE, DATA_FILE.resolveSibling("bookings.journal"));
+                    long t0 = System.nanoTime();
+                    long n = BillingEngine.nightAudit(rows, at, RatePolicy.DEFAULT, PricingEngine.read(DATA_FILE.resolveSibling("rates.csv")), out);
+                    System.out.printf("%d folios for %d rooms written to %s in %d ms%n", n, rows.size(), out, (System.nanoTime() - t0) / 1_000_000);
+                    return;
+                }
+                case "--stress": {
+                    // concurrent check-in/check-out hammer against a throwaway data directory
+                    int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+                    int threads = args.length > 2 ? Integer.parseInt(args[2]) : 2 * Runtime.getRuntime().availableProcessors();
+                    long seconds = args.length > 3 ? Long.parseLong(args[3]) : 5;
+                    boolean ok = StressCheck.run(rooms, threads, seconds * 1000, System.out);
+                    System.exit(ok ? 0 : 1);
+                    return;
+                }
+                case "--loadtest": {
+                    // synthetic properties and a weighted operation mix from many threads
+                    Map<String, String> options = new HashMap<>();
+                    for (int i = 1; i < args.length; i++) {
+                        int eq = args[i].indexOf('=');
+                        options.put(eq < 0 ? args[i] : args[i].substring(0, eq), eq < 0 ? "" : args[i].substring(eq + 1));
+                    }
+                    LoadTest test;
+                    try { test = new LoadTest(options); }
+                    catch (IllegalArgumentException ex) {
+                        System.err.println("--loadtest: " + ex.getMessage());
+                        System.err.println("usage: --loadtest [properties=1] [rooms=20000] [occupancy=60] [threads=N] [warmup=5] [seconds=30]"
+                                + " [types=Single:40,...] [mix=add:20,checkin:300,checkout:280,search:390,save:8,load:2] [dir=path]");
+                        System.exit(2);
+                        return;
+                    }
+                    System.exit(test.run(System.out) ? 0 : 1);
+                    return;
+                }
+                case "--batch": {
+                    // add-room / check-in / check-out commands from a file, applied without the window
+                    if (args.length < 2) {
+                        System.err.println("usage: --batch <commands.csv> [--dry-run]");
+                        System.exit(2);
+                    }
+                    boolean dryRun = args.length > 2 && args[2].equals("--dry-run");
+                    Consumer<IOException> onError = ex -> System.err.println("Write failed: " + ex.getMessage());
+                    int rejected;
+                    if ("columnar".equals(System.getProperty("hms.store"))) {
+                        ColumnarDesk desk = new ColumnarDesk(DATA_FILE, msg -> {}, onError);
+                        rejected = BatchRunner.run(desk, Paths.get(args[1]), dryRun, System.out);
+                        desk.shutdown();
+                    } else {
+                        BookingService desk = new BookingService(DATA_FILE, msg -> {}, onError);
+                        desk.apply(desk.read());
+                        rejected = BatchRunner.run(desk, Paths.get(args[1]), dryRun, System.out);
+                        desk.shutdown();
+                    }
+                    System.exit(rejected == 0 ? 0 : 1);
+                    return;
+                }
+                case "--report": {
+                    // revenue, ADR and occupancy from history/, by month and room type
+                    long today = Math.floorDiv(Timestamps.now(), 1440) * 1440;
+                    long from = args.length > 1 ? Timestamps.parse(args[1] + " 00:00")
+                            : Timestamps.parse(java.time.YearMonth.parse(Timestamps.format(today).substring(0, 7)).minusMonths(11) + "-01 00:00");
+                    long to = args.length > 2 ? Timestamps.parse(args[2] + " 00:00") : today + 1440;
+                    if (from == Timestamps.INVALID || to == Timestamps.INVALID || from >= to) {
+                        System.err.println("usage: --report [from yyyy-MM-dd] [to yyyy-MM-dd]");
+                        System.exit(2);
+                    }
+                    Map<String, Integer> rooms = new HashMap<>();
+                    for (Booking b : loadHeadless(DATA_FILE, DATA_FILE.resolveSibling("bookings.journal")))
+                        rooms.merge(RoomStore.key(b.roomType), 1, Integer::sum);
+                    long t0 = System.nanoTime();
+                    List<StayHistory.ReportRow> rows = StayHistory.report(DATA_FILE.resolveSibling("history"), from, to, rooms);
+                    System.out.println(StayHistory.ReportRow.HEADER);
+                    for (StayHistory.ReportRow r : rows) System.out.println(r.toCSV());
+                    System.err.printf("%d rows in %d ms%n", rows.size(), (System.nanoTime() - t0) / 1_000_000);
+                    return;
+                }
+                case "--convert": {
+                    // CSV <-> binary snapshot; the input format is detected, the output follows the extension
+                    if (args.length < 3) {
+                        System.err.println("usage: --convert <in.csv|in.bin> <out.csv|out.bin>");
+                        System.exit(2);
+                    }
+                    BulkCsvLoader.Result r = PersistenceService.load(Paths.get(args[1]));
+                    System.out.println("Read " + r.summary());
+                    long t0 = System.nanoTime();
+                    long bytes = PersistenceService.write(Paths.get(args[2]), r.rows, null);
+                    System.out.printf("Wrote %d records (%d KB) to %s in %d ms%n", r.rows.size(), bytes / 1024, args[2], (System.nanoTime() - t0) / 1_000_000);
+                    return;
+                }
+                case "--view": {
+                    // page through a CSV of any size without loading it
+                    Path file = Paths.get(args.length > 1 ? args[1] : "bookings.csv");
+                    SwingUtilities.invokeLater(() -> {
+                        try { view(file); }
+                        catch (IOException ex) {
+                            System.err.println("--view failed: " + ex.getMessage());
+                            System.exit(1);
+                        }
+                    });
+                    return;
+                }
+                case "--chain": {
+                    // one shard per property folder; search, guest lookup and vacancy across all of them
+                    if (args.length < 2) {
+                        System.err.println("usage: --chain <dir> [search <text> | guest <name> | vacant]");
+                        System.exit(2);
+                    }
+                    PropertyChain chain = new PropertyChain(Paths.get(args[1]), msg -> {},
+                            ex -> System.err.println("Write failed: " + ex.getMessage()));
+                    long t0 = System.nanoTime();
+                    long rooms = chain.load();
+                    System.err.printf("Loaded %d rooms in %d properties in %d ms%n", rooms, chain.properties().size(), (System.nanoTime() - t0) / 1_000_000);
+                    String query = args.length > 2 ? args[2] : "";
+                    String text = args.length > 3 ? args[3] : "";
+                    t0 = System.nanoTime();
+                    switch (query) {
+                        case "search":
+                        case "guest":
+                            System.out.println("Property," + PersistenceService.HEADER);
+                            for (PropertyChain.Located l : query.equals("search") ? chain.search(text) : chain.findGuest(text))
+                                System.out.println(Booking.escapeCSV(l.property) + "," + l.room.toCSV());
+                            break;
+                        case "vacant":
+                            System.out.println("RoomType,Vacant");
+                            chain.vacantByType().forEach((type, n) -> System.out.println(type + "," + n));
+                            break;
+                        default:
+                            System.out.println("Property,Rooms");
+                            for (String p : chain.properties()) System.out.println(p + "," + chain.property(p).rooms().size());
+                    }
+                    System.err.printf("Query took %d ms%n", (System.nanoTime() - t0) / 1_000_000);
+                    chain.shutdown();
+                    return;
+                }
+                case "--server": {
+                    // the same rooms over HTTP/JSON; binds to localhost unless -Dhms.bind says otherwise
+                    int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+                    BookingService desk = new BookingService(DATA_FILE, System.out::println,
+                            ex -> System.err.println("Save failed: " + ex.getMessage()));
+                    Metrics.register();
+                    long started = Metrics.start();
+                    Loaded loaded = desk.read();
+                    desk.apply(loaded);
+                    Metrics.LOAD.record(started, desk.rooms().size());
+                    HttpDeskServer server = new HttpDeskServer(desk,
+                            new java.net.InetSocketAddress(System.getProperty("hms.bind", "localhost"), port));
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        server.stop();
+                        desk.shutdown();
+                    }));
+                    server.start();
+                    System.out.println("Loaded " + desk.rooms().size() + " records" + loaded.summary);
+                    System.out.println("Serving on http://" + server.address().getHostString() + ":" + server.address().getPort() + "/");
+                    return;
+                }
+                case "--selfcheck": {
+                    // edge-case regressions, without the window
+                    System.exit(SelfCheck.run(System.out) ? 0 : 1);
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException ex) {
+            System.err.println(mode + " failed: " + ex.getMessage());
+            System.exit(1);
+        }
+        String serverUrl = mode.equals("--connect") && args.length > 1 ? args[1] : null;
         SwingUtilities.invokeLater(() -> {
             try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); }
             catch (Exception ignored) {}
-            HotelManagementSystem app = new HotelManagementSystem();
+            Metrics.register();
+            HotelManagementSystem app = new HotelManagementSystem(serverUrl);
             app.setVisible(true);
         });
     }
@@ -0,0 +1,97 @@
+import hms.bench.HotPaths;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Default-package bridge from the JMH benchmarks to HotelManagementSystem's
+ * package-private core. Data is generated from a fixed seed so runs compare.
+ */
+public class BenchHooks implements HotPaths {
+    private static final String[] TYPES = {"Single", "Single", "Double", "Double", "Deluxe"};
+    private static final String[] FIRST = {"James", "Maria", "Wei", "Aisha", "Olga", "Tom", "Priya", "Jean-Luc"};
+    private static final String[] LAST = {"Bond", "Garcia", "Chen", "Khan", "Ivanova", "O'Neil, Jr", "Sharma", "\"JL\" Picard"};
+    private static final int QUERIES = 4096;
+
+    private HotelManagementSystem.RoomStore store;
+    private List<HotelManagementSystem.Booking> snapshot;
+    private HotelManagementSystem.Booking[] rooms;
+    private HotelManagementSystem.Booking[] occupied;
+    private String[] lines;
+    private String[] roomQueries;
+    private String[] searchQueries;
+    private long checkOutAt;
+    private Path dataFile;
+
+    public void setUp(int n, Path dir) throws IOException {
+        Random rnd = new Random(42);
+        long now = HotelManagementSystem.Timestamps.now();
+        store = new HotelManagementSystem.RoomStore();
+        rooms = new HotelManagementSystem.Booking[n];
+        lines = new String[n];
+        List<HotelManagementSystem.Booking> in = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            HotelManagementSystem.Booking b = new HotelManagementSystem.Booking(
+                    String.valueOf(100 + i), TYPES[rnd.nextInt(TYPES.length)], 1000 + 50 * rnd.nextInt(40));
+            store.add(b);
+            if (rnd.nextInt(3) != 0) {
+                String guest = FIRST[rnd.nextInt(FIRST.length)] + " " + LAST[rnd.nextInt(LAST.length)] + " " + rnd.nextInt(1000);
+                store.checkIn(b, guest, HotelManagementSystem.Timestamps.format(now - rnd.nextInt(14 * 1440)));
+                in.add(b);
+            }
+            rooms[i] = b;
+            lines[i] = b.toCSV();
+        }
+        occupied = in.toArray(new HotelManagementSystem.Booking[0]);
+        checkOutAt = now;
+
+        roomQueries = new String[QUERIES];
+        searchQueries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            HotelManagementSystem.Booking b = rooms[rnd.nextInt(n)];
+            roomQueries[q] = q % 4 == 0 ? "X" + b.roomNumber : b.roomNumber; // a quarter are misses
+            String text = rnd.nextBoolean() || !b.isOccupied() ? b.roomNumber : b.guestName.toUpperCase(Locale.ROOT);
+            int len = Math.min(text.length(), 2 + rnd.nextInt(5));
+            int from = rnd.nextInt(text.length() - len + 1);
+            searchQueries[q] = text.substring(from, from + len);
+        }
+
+        snapshot = store.snapshot();
+        dataFile = dir.resolve("bookings.csv");
+        save();
+    }
+
+    public Object parseCsvLine(int i) {
+        return HotelManagementSystem.parseCSVLine(lines[i % lines.length]);
+    }
+
+    public Object toCsv(int i) {
+        return rooms[i % rooms.length].toCSV();
+    }
+
+    public Object findRoom(int i) {
+        return store.find(roomQueries[i % QUERIES]);
+    }
+
+    public Object search(int i) {
+        return store.search(searchQueries[i % QUERIES]);
+    }
+
+    public Object checkOutBill(int i) {
+        HotelManagementSystem.Folio f = HotelManagementSystem.BillingEngine.bill(
+                occupied[i % occupied.length], checkOutAt, HotelManagementSystem.RatePolicy.DEFAULT);
+        return f.billText();
+    }
+
+    public Object save() throws IOException {
+        return HotelManagementSystem.PersistenceService.write(dataFile, snapshot, null);
+    }
+
+    public Object load() throws IOException {
+        return HotelManagementSystem.BulkCsvLoader.load(dataFile).rows;
+    }
+}
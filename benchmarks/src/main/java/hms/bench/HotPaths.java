@@ -0,0 +1,37 @@
+package hms.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The operations the benchmarks measure. JMH refuses benchmarks in the default
+ * package and a named package cannot see HotelManagementSystem, so the work is done
+ * by BenchHooks, which sits in the default package next to it.
+ */
+public interface HotPaths {
+
+    /** Builds a synthetic property with the given number of rooms; files go under dir. */
+    void setUp(int rooms, Path dir) throws IOException;
+
+    Object parseCsvLine(int i);
+
+    Object toCsv(int i);
+
+    Object findRoom(int i);
+
+    Object search(int i);
+
+    Object checkOutBill(int i);
+
+    Object save() throws IOException;
+
+    Object load() throws IOException;
+
+    static HotPaths create() {
+        try {
+            return (HotPaths) Class.forName("BenchHooks").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("BenchHooks is missing from the classpath", ex);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package hms.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Hot paths of the booking desk at 1k, 100k and 1M rooms. Per-call benchmarks cycle
+ * through precomputed rows and queries so they don't hit the same entry every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class HotPathsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int rooms;
+
+    private HotPaths paths;
+    private Path dir;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("hms-bench");
+        paths = HotPaths.create();
+        paths.setUp(rooms, dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+
+    private int next() {
+        return cursor++ & Integer.MAX_VALUE;
+    }
+
+    @Benchmark
+    public Object parseCSVLine() {
+        return paths.parseCsvLine(next());
+    }
+
+    @Benchmark
+    public Object toCSV() {
+        return paths.toCsv(next());
+    }
+
+    @Benchmark
+    public Object findBookingByRoom() {
+        return paths.findRoom(next());
+    }
+
+    @Benchmark
+    public Object search() {
+        return paths.search(next());
+    }
+
+    @Benchmark
+    public Object checkOutBill() {
+        return paths.checkOutBill(next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Object saveLoadRoundTrip() throws IOException {
+        paths.save();
+        return paths.load();
+    }
+}